@@ -4,7 +4,11 @@
 CREATE TABLE IF NOT EXISTS user_points (
   user_id VARCHAR(64) PRIMARY KEY,
   total_points BIGINT NOT NULL DEFAULT 0,
-  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+  version BIGINT NOT NULL DEFAULT 0,
+  -- a deleted user keeps the row as a tombstone (total 0, version still counting up) until points are added again
+  deleted BOOLEAN NOT NULL DEFAULT FALSE,
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  INDEX idx_user_points_total_points (total_points)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 CREATE TABLE IF NOT EXISTS points (
@@ -12,6 +16,94 @@ CREATE TABLE IF NOT EXISTS points (
   user_id VARCHAR(64) NOT NULL,
   amount BIGINT NOT NULL,
   reason VARCHAR(255) NOT NULL,
+  -- user_points.version written by the same transaction; delete jobs fence on it, not on id
+  user_version BIGINT NOT NULL DEFAULT 0,
   created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  INDEX idx_points_user_id (user_id)
+  -- amount makes per-user sums (reconciliation) index-only
+  INDEX idx_points_user_id_id_amount (user_id, id, amount),
+  INDEX idx_points_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS points_outbox (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  topic VARCHAR(255) NOT NULL,
+  message_key VARCHAR(64) NOT NULL,
+  payload TEXT NOT NULL,
+  created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  sent_at TIMESTAMP(3) NULL,
+  INDEX idx_points_outbox_pending (sent_at, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS points_delete_jobs (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  user_id VARCHAR(64) NOT NULL,
+  -- rows with user_version up to here were written before the delete
+  fence_version BIGINT NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  deleted_rows BIGINT NOT NULL DEFAULT 0,
+  created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  started_at TIMESTAMP(3) NULL,
+  finished_at TIMESTAMP(3) NULL,
+  updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  INDEX idx_points_delete_jobs_status (status, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS points_reconcile_jobs (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  repair BOOLEAN NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  range_count INT NOT NULL,
+  created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  finished_at TIMESTAMP(3) NULL,
+  INDEX idx_points_reconcile_jobs_status (status, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- from_user_id is exclusive and to_user_id inclusive; NULL means unbounded.
+-- checkpoint_user_id is the last user id whose chunk has been compared and repaired.
+CREATE TABLE IF NOT EXISTS points_reconcile_ranges (
+  job_id BIGINT NOT NULL,
+  range_no INT NOT NULL,
+  from_user_id VARCHAR(64) NULL,
+  to_user_id VARCHAR(64) NULL,
+  checkpoint_user_id VARCHAR(64) NULL,
+  status VARCHAR(16) NOT NULL,
+  checked_users BIGINT NOT NULL DEFAULT 0,
+  mismatched_users BIGINT NOT NULL DEFAULT 0,
+  repaired_users BIGINT NOT NULL DEFAULT 0,
+  started_at TIMESTAMP(3) NULL,
+  finished_at TIMESTAMP(3) NULL,
+  updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (job_id, range_no),
+  INDEX idx_points_reconcile_ranges_status (status, updated_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS points_reconcile_mismatches (
+  job_id BIGINT NOT NULL,
+  user_id VARCHAR(64) NOT NULL,
+  ledger_total BIGINT NOT NULL,
+  stored_total BIGINT NULL,
+  repaired BOOLEAN NOT NULL DEFAULT FALSE,
+  created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (job_id, user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- points rows older than demo.archive.min-age-days, moved here in id order by PointsArchiver,
+-- so every archived id is lower than every id still in points
+CREATE TABLE IF NOT EXISTS points_archive (
+  id BIGINT PRIMARY KEY,
+  user_id VARCHAR(64) NOT NULL,
+  amount BIGINT NOT NULL,
+  reason VARCHAR(255) NOT NULL,
+  user_version BIGINT NOT NULL DEFAULT 0,
+  created_at TIMESTAMP NOT NULL,
+  archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  INDEX idx_points_archive_user_id_id_amount (user_id, id, amount)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED;
+
+-- per-user sum of the archived rows, so a ledger total is SUM(points) + archived_total
+CREATE TABLE IF NOT EXISTS points_archive_users (
+  user_id VARCHAR(64) PRIMARY KEY,
+  archived_total BIGINT NOT NULL DEFAULT 0,
+  archived_count BIGINT NOT NULL DEFAULT 0,
+  updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,94 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.cache.LeaderboardRedis;
+import com.example.demo.event.PointsChangedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Key and argument building of the leaderboard scripts, without the Redis round trip.
+// The template keeps the last arguments so they escape, and returns an empty result.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LeaderboardArgsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int users;
+
+    @Param({"1", "4"})
+    public int pointsPerUser;
+
+    private SinkTemplate template;
+    private LeaderboardRedis leaderboardRedis;
+    private List<PointsChangedEvent> changes;
+    private Map<String, List<LeaderboardRedis.ProjectedPoint>> projected;
+    private Map<String, Long> scores;
+    private Instant now;
+
+    @Setup
+    public void setUp() {
+        template = new SinkTemplate();
+        leaderboardRedis = new LeaderboardRedis(template);
+        now = Instant.parse("2025-06-30T23:59:00Z");
+        changes = new ArrayList<>();
+        projected = new LinkedHashMap<>();
+        scores = new LinkedHashMap<>();
+        for (int u = 0; u < users; u++) {
+            String userId = "user-" + u;
+            List<LeaderboardRedis.ProjectedPoint> points = new ArrayList<>();
+            for (int p = 1; p <= pointsPerUser; p++) {
+                changes.add(new PointsChangedEvent(userId, (long) p, 10L, "bench", 10L * p, (long) p));
+                // spread over the day boundary so more than one window key is built
+                points.add(new LeaderboardRedis.ProjectedPoint(p, 10L, 10L * p, now.plusSeconds(30L * p)));
+            }
+            projected.put(userId, points);
+            scores.put(userId, 10L * pointsPerUser);
+        }
+    }
+
+    @Benchmark
+    public Object[] applyChanges() {
+        leaderboardRedis.applyChanges(changes, now);
+        return template.args;
+    }
+
+    @Benchmark
+    public Object[] project() {
+        leaderboardRedis.project(projected);
+        return template.args;
+    }
+
+    @Benchmark
+    public Object[] stageChunk() {
+        leaderboardRedis.stageChunk("points:leaderboard", "points:leaderboard:staging:bench", scores);
+        return template.args;
+    }
+
+    static class SinkTemplate extends StringRedisTemplate {
+
+        private Object[] args;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            this.args = args;
+            Class<T> resultType = script.getResultType();
+            return resultType == List.class ? (T) List.of() : (T) Long.valueOf(1L);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.demo.benchmark;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.example.demo.service.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Rows per second for one transaction of ROWS points inserts against an embedded MariaDB:
+//   identity_per_row  - IDENTITY through Hibernate: each insert runs on its own to read its key
+//   identity_batched  - one JDBC batch that still reads the generated keys back
+//   assigned_batched  - ids from SnowflakeIdGenerator, one rewritten multi-row INSERT
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PointInsertBenchmark {
+
+    private static final int ROWS = 100;
+    private static final String DATABASE = "bench";
+
+    @Param({"identity_per_row", "identity_batched", "assigned_batched"})
+    public String mode;
+
+    private DB db;
+    private Connection connection;
+    private SnowflakeIdGenerator ids;
+    private PreparedStatement insert;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            config.setPort(socket.getLocalPort());
+        }
+        db = DB.newEmbeddedDB(config.build());
+        db.start();
+        db.createDB(DATABASE);
+        connection = DriverManager.getConnection(
+                "jdbc:mysql://127.0.0.1:" + config.getPort() + "/" + DATABASE
+                        + "?useSSL=false&allowPublicKeyRetrieval=true&rewriteBatchedStatements=true",
+                "root",
+                "");
+        try (Statement ddl = connection.createStatement()) {
+            // same shape as init.sql; AUTO_INCREMENT is only used by the identity modes
+            ddl.execute("CREATE TABLE points ("
+                    + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                    + " user_id VARCHAR(64) NOT NULL,"
+                    + " amount BIGINT NOT NULL,"
+                    + " reason VARCHAR(255) NOT NULL,"
+                    + " created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                    + " INDEX idx_points_user_id_id_amount (user_id, id, amount),"
+                    + " INDEX idx_points_created_at (created_at)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+        connection.setAutoCommit(false);
+        ids = new SnowflakeIdGenerator(1);
+        insert = "assigned_batched".equals(mode)
+                ? connection.prepareStatement("INSERT INTO points (id, user_id, amount, reason) VALUES (?, ?, ?, ?)")
+                : connection.prepareStatement(
+                        "INSERT INTO points (user_id, amount, reason) VALUES (?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        insert.close();
+        connection.close();
+        db.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long insert() throws SQLException {
+        long last = switch (mode) {
+            case "identity_per_row" -> insertPerRow();
+            case "identity_batched" -> insertBatchedWithKeys();
+            case "assigned_batched" -> insertBatchedAssigned();
+            default -> throw new IllegalArgumentException(mode);
+        };
+        connection.commit();
+        return last;
+    }
+
+    private long insertPerRow() throws SQLException {
+        long last = 0;
+        for (int i = 0; i < ROWS; i++) {
+            bind(1, i);
+            insert.executeUpdate();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                keys.next();
+                last = keys.getLong(1);
+            }
+        }
+        return last;
+    }
+
+    private long insertBatchedWithKeys() throws SQLException {
+        for (int i = 0; i < ROWS; i++) {
+            bind(1, i);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        long last = 0;
+        try (ResultSet keys = insert.getGeneratedKeys()) {
+            while (keys.next()) {
+                last = keys.getLong(1);
+            }
+        }
+        return last;
+    }
+
+    private long insertBatchedAssigned() throws SQLException {
+        long last = 0;
+        for (int i = 0; i < ROWS; i++) {
+            last = ids.nextId();
+            insert.setLong(1, last);
+            bind(2, i);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        return last;
+    }
+
+    // a spread of users so the secondary index sees realistic inserts
+    private void bind(int from, int i) throws SQLException {
+        insert.setString(from, "user-" + (counter++ % 10000));
+        insert.setLong(from + 1, i + 1);
+        insert.setString(from + 2, "benchmark");
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.mq.event.UserPointsEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// UserPointsEvent round trips: the ObjectMapper used for outbox payloads, and the
+// serializers RedisConfig wires into RedisTemplate next to the plain string one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    // reason length in characters; the column allows up to 255
+    @Param({"0", "32", "255"})
+    public int reasonLength;
+
+    private ObjectMapper objectMapper;
+    private GenericJackson2JsonRedisSerializer genericSerializer;
+    private Jackson2JsonRedisSerializer<UserPointsEvent> typedSerializer;
+    private final StringRedisSerializer stringSerializer = StringRedisSerializer.UTF_8;
+
+    private UserPointsEvent event;
+    private String json;
+    private byte[] jsonBytes;
+    private byte[] genericBytes;
+    private byte[] typedBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // RedisConfig uses the default constructor, which cannot write Instant on its own
+        genericSerializer = new GenericJackson2JsonRedisSerializer();
+        genericSerializer.configure(mapper -> mapper
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        typedSerializer = new Jackson2JsonRedisSerializer<>(objectMapper, UserPointsEvent.class);
+
+        event = new UserPointsEvent();
+        event.setType(UserPointsEvent.TYPE_ADDED);
+        event.setUserId("user-123456");
+        event.setAmount(25L);
+        event.setReason("r".repeat(reasonLength));
+        event.setPointId(987654321L);
+        event.setTotal(1250L);
+        event.setVersion(37L);
+        event.setCreatedAt(Instant.parse("2025-06-30T12:00:00.123Z"));
+
+        json = objectMapper.writeValueAsString(event);
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        genericBytes = genericSerializer.serialize(event);
+        typedBytes = typedSerializer.serialize(event);
+    }
+
+    @Benchmark
+    public String objectMapperWrite() throws Exception {
+        return objectMapper.writeValueAsString(event);
+    }
+
+    @Benchmark
+    public UserPointsEvent objectMapperRead() throws Exception {
+        return objectMapper.readValue(json, UserPointsEvent.class);
+    }
+
+    @Benchmark
+    public byte[] genericJacksonWrite() {
+        return genericSerializer.serialize(event);
+    }
+
+    @Benchmark
+    public Object genericJacksonRead() {
+        return genericSerializer.deserialize(genericBytes);
+    }
+
+    @Benchmark
+    public byte[] typedJacksonWrite() {
+        return typedSerializer.serialize(event);
+    }
+
+    @Benchmark
+    public UserPointsEvent typedJacksonRead() {
+        return typedSerializer.deserialize(typedBytes);
+    }
+
+    // what a StringRedisTemplate caller pays on top of producing the JSON itself
+    @Benchmark
+    public byte[] stringWrite() {
+        return stringSerializer.serialize(json);
+    }
+
+    @Benchmark
+    public String stringRead() {
+        return stringSerializer.deserialize(jsonBytes);
+    }
+}
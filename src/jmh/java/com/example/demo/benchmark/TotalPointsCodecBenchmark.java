@@ -0,0 +1,67 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.cache.TotalPointsCodec;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// The decode branches UserTotalPointsRedis.getCached walks for one value:
+// the compact codec, the legacy JSON fallback, and a miss.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TotalPointsCodecBenchmark {
+
+    @Param({"7", "1250", "9223372036854775"})
+    public long total;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CachedTotalPoints cached;
+    private String compact;
+    private String legacy;
+
+    @Setup
+    public void setUp() throws Exception {
+        cached = new CachedTotalPoints(total, 37L);
+        compact = TotalPointsCodec.encode(cached);
+        legacy = objectMapper.writeValueAsString("{\"total\":" + total + "}");
+    }
+
+    @Benchmark
+    public String encode() {
+        return TotalPointsCodec.encode(cached);
+    }
+
+    @Benchmark
+    public CachedTotalPoints decodeCompact() {
+        return decode(compact);
+    }
+
+    @Benchmark
+    public CachedTotalPoints decodeLegacy() {
+        return decode(legacy);
+    }
+
+    @Benchmark
+    public CachedTotalPoints decodeMiss() {
+        return decode(null);
+    }
+
+    private CachedTotalPoints decode(String value) {
+        CachedTotalPoints decoded = TotalPointsCodec.decode(value);
+        if (decoded == null) {
+            decoded = TotalPointsCodec.decodeLegacy(value, objectMapper);
+        }
+        return decoded;
+    }
+}
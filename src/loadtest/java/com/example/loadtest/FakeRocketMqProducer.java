@@ -0,0 +1,45 @@
+package com.example.loadtest;
+
+import com.example.demo.mq.RocketMqProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Acknowledges every message without a broker, so the outbox relay drains at
+// database speed. Projection is off in the load-test profile, so nothing consumes.
+public class FakeRocketMqProducer extends RocketMqProducer {
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    public FakeRocketMqProducer(MeterRegistry meterRegistry) {
+        super("localhost:0", "load-test-producer", 1, 1, "drop", 0, 0, System.getProperty("java.io.tmpdir"),
+                meterRegistry);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public CompletableFuture<SendResult> sendAsync(String topic, String key, String payload) {
+        accepted.incrementAndGet();
+        return CompletableFuture.completedFuture(ok());
+    }
+
+    public long accepted() {
+        return accepted.get();
+    }
+
+    private SendResult ok() {
+        SendResult result = new SendResult();
+        result.setSendStatus(SendStatus.SEND_OK);
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Log-linear histogram over microseconds: exact below 64us, then 32 buckets per
+// power of two, i.e. at most ~3% error on any reported percentile.
+final class LatencyRecorder {
+
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long micros, boolean error) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        max.accumulate(value);
+        if (error) {
+            errors.incrementAndGet();
+        }
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    long maxMicros() {
+        return max.get();
+    }
+
+    // upper bound of the bucket holding the given quantile
+    long percentileMicros(double quantile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - 5;
+        int index = LINEAR + (exponent - 6) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 6;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (exponent - 5)) - 1;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.loadtest;
+
+import com.example.loadtest.LoadTestSettings.Endpoint;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Closed loop: each of the concurrency workers sends its next request as soon as the
+// previous one returns. Requests finishing inside the warm-up are not recorded.
+final class LoadGenerator {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final LoadTestSettings settings;
+    private final URI baseUri;
+    private final ZipfUserSampler users;
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+    private final Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+    private final HttpClient client;
+
+    LoadGenerator(LoadTestSettings settings, int port) {
+        this.settings = settings;
+        this.baseUri = URI.create("http://127.0.0.1:" + port);
+        this.users = new ZipfUserSampler(settings.users(), settings.zipfExponent());
+        List<Endpoint> weighted = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int sum = 0;
+        for (Map.Entry<Endpoint, Integer> entry : settings.mix().entrySet()) {
+            if (entry.getValue() > 0) {
+                sum += entry.getValue();
+                weighted.add(entry.getKey());
+                cumulative.add(sum);
+                recorders.put(entry.getKey(), new LatencyRecorder());
+            }
+        }
+        this.endpoints = weighted.toArray(Endpoint[]::new);
+        this.cumulativeWeights = cumulative.stream().mapToInt(Integer::intValue).toArray();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+    }
+
+    Map<Endpoint, LatencyRecorder> run() throws InterruptedException {
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(settings.warmupSeconds());
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(settings.durationSeconds());
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.concurrency(); i++) {
+                workers.submit(() -> work(recordFrom, end));
+            }
+        }
+        return recorders;
+    }
+
+    private void work(long recordFrom, long end) {
+        while (System.nanoTime() < end) {
+            Endpoint endpoint = pick();
+            HttpRequest request = request(endpoint, users.next());
+            long sent = System.nanoTime();
+            boolean error;
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                error = response.statusCode() >= 400;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                error = true;
+            }
+            long finished = System.nanoTime();
+            if (finished >= recordFrom && finished < end) {
+                recorders.get(endpoint).record(TimeUnit.NANOSECONDS.toMicros(finished - sent), error);
+            }
+        }
+    }
+
+    private Endpoint pick() {
+        int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    private HttpRequest request(Endpoint endpoint, String userId) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(REQUEST_TIMEOUT);
+        return switch (endpoint) {
+            case ADD -> builder.uri(baseUri.resolve("/points"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"userId\":\"" + userId + "\",\"amount\":"
+                                    + ThreadLocalRandom.current().nextInt(1, 100) + ",\"reason\":\"load-test\"}"))
+                    .build();
+            case TOTAL -> builder.uri(baseUri.resolve("/points/" + userId)).GET().build();
+            case LEADERBOARD -> builder.uri(baseUri.resolve("/points/leaderboard?limit=" + settings.leaderboardLimit()))
+                    .GET()
+                    .build();
+            case DELETE -> builder.uri(baseUri.resolve("/points/" + userId)).DELETE().build();
+        };
+    }
+}
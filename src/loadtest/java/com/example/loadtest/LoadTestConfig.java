@@ -0,0 +1,15 @@
+package com.example.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// replaces the component-scanned producer; the load-test profile allows the override
+@Configuration
+public class LoadTestConfig {
+
+    @Bean
+    public FakeRocketMqProducer rocketMqProducer(MeterRegistry meterRegistry) {
+        return new FakeRocketMqProducer(meterRegistry);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.loadtest;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.example.demo.DemoApplication;
+import com.example.loadtest.LoadTestSettings.Endpoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Starts MariaDB4j, a local redis-server and the application with a fake producer,
+// drives the configured traffic mix, then prints and writes per-endpoint results.
+public class LoadTestMain {
+
+    private static final String DATABASE = "taskdb";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+        DBConfigurationBuilder dbConfig = DBConfigurationBuilder.newBuilder();
+        dbConfig.setPort(LocalRedisServer.freePort());
+        DB db = DB.newEmbeddedDB(dbConfig.build());
+        db.start();
+        ConfigurableApplicationContext context = null;
+        try (LocalRedisServer redis = LocalRedisServer.start(settings.redisServer())) {
+            db.createDB(DATABASE);
+            db.source("init.sql", DATABASE);
+
+            // as command-line arguments: default properties would lose to application.yaml
+            Map<String, Object> properties = new LinkedHashMap<>();
+            properties.put("spring.datasource.url", "jdbc:mysql://127.0.0.1:" + dbConfig.getPort() + "/" + DATABASE
+                    + "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&rewriteBatchedStatements=true");
+            properties.put("spring.datasource.username", "root");
+            properties.put("spring.datasource.password", "");
+            properties.put("spring.data.redis.host", "127.0.0.1");
+            properties.put("spring.data.redis.port", redis.port());
+            List<String> applicationArgs = new ArrayList<>(List.of(args));
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                applicationArgs.add("--" + property.getKey() + "=" + property.getValue());
+            }
+            context = new SpringApplicationBuilder(DemoApplication.class, LoadTestConfig.class)
+                    .profiles("load-test")
+                    .run(applicationArgs.toArray(new String[0]));
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            System.out.printf("load test: %d workers, %ds warm-up, %ds measured, %d users (zipf %.2f), mix %s%n",
+                    settings.concurrency(), settings.warmupSeconds(), settings.durationSeconds(),
+                    settings.users(), settings.zipfExponent(), settings.mix());
+            Map<Endpoint, LatencyRecorder> results = new LoadGenerator(settings, port).run();
+            long sentToMq = context.getBean(FakeRocketMqProducer.class).accepted();
+            report(settings, results, sentToMq);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            db.stop();
+        }
+    }
+
+    private static void report(LoadTestSettings settings, Map<Endpoint, LatencyRecorder> results, long sentToMq)
+            throws Exception {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%-12s %10s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Endpoint, LatencyRecorder> entry : results.entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            double throughput = (double) recorder.count() / settings.durationSeconds();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("requests", recorder.count());
+            row.put("throughputPerSecond", throughput);
+            row.put("errors", recorder.errors());
+            row.put("p50Ms", millis(recorder.percentileMicros(0.50)));
+            row.put("p90Ms", millis(recorder.percentileMicros(0.90)));
+            row.put("p99Ms", millis(recorder.percentileMicros(0.99)));
+            row.put("p999Ms", millis(recorder.percentileMicros(0.999)));
+            row.put("maxMs", millis(recorder.maxMicros()));
+            endpoints.put(entry.getKey().name().toLowerCase(Locale.ROOT), row);
+            System.out.printf("%-12s %10d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey().name().toLowerCase(Locale.ROOT), recorder.count(), throughput, recorder.errors(),
+                    row.get("p50Ms"), row.get("p90Ms"), row.get("p99Ms"), row.get("p999Ms"), row.get("maxMs"));
+        }
+        System.out.printf("outbox messages acknowledged by the fake producer: %d%n", sentToMq);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", Instant.now().toString());
+        report.put("settings", settings.toString());
+        report.put("mqMessages", sentToMq);
+        report.put("endpoints", endpoints);
+        if (settings.report().getParent() != null) {
+            Files.createDirectories(settings.report().getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(settings.report().toFile(), report);
+        System.out.println("report written to " + settings.report().toAbsolutePath());
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.loadtest;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// all settings come from -Dloadtest.* system properties, see the load-test profile in pom.xml
+public record LoadTestSettings(
+        int durationSeconds,
+        int warmupSeconds,
+        int concurrency,
+        int users,
+        double zipfExponent,
+        Map<Endpoint, Integer> mix,
+        int leaderboardLimit,
+        String redisServer,
+        Path report) {
+
+    public enum Endpoint {
+        ADD, TOTAL, LEADERBOARD, DELETE
+    }
+
+    public static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.duration-seconds", 60),
+                Integer.getInteger("loadtest.warmup-seconds", 10),
+                Integer.getInteger("loadtest.concurrency", 64),
+                Integer.getInteger("loadtest.users", 100000),
+                Double.parseDouble(System.getProperty("loadtest.zipf-exponent", "1.1")),
+                parseMix(System.getProperty("loadtest.mix", "add:50,total:35,leaderboard:14,delete:1")),
+                Integer.getInteger("loadtest.leaderboard-limit", 10),
+                System.getProperty("loadtest.redis-server", ""),
+                Path.of(System.getProperty("loadtest.report", "target/load-test-report.json")));
+    }
+
+    // "add:50,total:35,leaderboard:14,delete:1"; weights are relative, missing endpoints get 0
+    static Map<Endpoint, Integer> parseMix(String value) {
+        Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("loadtest.mix entry must be endpoint:weight, got " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("loadtest.mix weight must not be negative, got " + part);
+            }
+            mix.put(Endpoint.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("loadtest.mix has no positive weight");
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.loadtest;
+
+import redis.embedded.core.ExecutableProvider;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// a throwaway redis-server on a free port, without persistence. Without an explicit
+// executable it runs the binary bundled with embedded-redis, the one the unit tests use.
+final class LocalRedisServer implements AutoCloseable {
+
+    private static final long START_TIMEOUT_MS = 10000;
+
+    private final Process process;
+    private final int port;
+
+    private LocalRedisServer(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    static LocalRedisServer start(String executable) throws IOException, InterruptedException {
+        if (executable == null || executable.isBlank()) {
+            executable = ExecutableProvider.newJarResourceProvider().get().getAbsolutePath();
+        }
+        int port = freePort();
+        Path log = Files.createTempFile("load-test-redis", ".log");
+        Process process = new ProcessBuilder(executable,
+                "--port", Integer.toString(port),
+                "--bind", "127.0.0.1",
+                "--save", "",
+                "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        LocalRedisServer server = new LocalRedisServer(process, port);
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+        while (!server.accepting()) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                server.close();
+                throw new IOException("redis-server did not start on port " + port + ", see " + log);
+            }
+            Thread.sleep(50);
+        }
+        return server;
+    }
+
+    int port() {
+        return port;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    private boolean accepting() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
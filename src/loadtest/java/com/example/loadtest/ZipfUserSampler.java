@@ -0,0 +1,32 @@
+package com.example.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Zipf-distributed user ids: user-0 is the hottest, and with exponent ~1 the top 1%
+// of users receive roughly half of the traffic, which is what keeps the same
+// user_points rows and cache entries contended.
+final class ZipfUserSampler {
+
+    private final double[] cdf;
+
+    ZipfUserSampler(int users, double exponent) {
+        cdf = new double[users];
+        double sum = 0;
+        for (int rank = 1; rank <= users; rank++) {
+            sum += 1.0 / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < users; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    String next() {
+        int index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return "user-" + Math.min(index, cdf.length - 1);
+    }
+}
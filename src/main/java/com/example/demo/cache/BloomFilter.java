@@ -0,0 +1,161 @@
+package com.example.demo.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Scalable Bloom filter (Almeida et al.): when the newest slice has taken its planned
+// number of insertions a slice twice as large is added, with half the false-positive
+// rate. The rates form a geometric series, so the whole filter stays below the
+// configured rate however many ids are added: fpp/2 + fpp/4 + ... < fpp.
+// Bits are set with CAS, so put and mightContain are safe from any thread.
+public final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final CopyOnWriteArrayList<Slice> slices = new CopyOnWriteArrayList<>();
+    private final AtomicLong count = new AtomicLong();
+
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive and fpp in (0, 1)");
+        }
+        slices.add(new Slice(expectedInsertions, fpp / 2));
+    }
+
+    // true if the id may not have been present before
+    public boolean put(String value) {
+        long hash1 = hash(value);
+        long hash2 = secondHash(hash1);
+        for (Slice slice : slices) {
+            if (slice.contains(hash1, hash2)) {
+                return false;
+            }
+        }
+        Slice newest = slices.get(slices.size() - 1);
+        if (newest.inserted.get() >= newest.capacity) {
+            newest = grow(newest);
+        }
+        newest.set(hash1, hash2);
+        newest.inserted.incrementAndGet();
+        count.incrementAndGet();
+        return true;
+    }
+
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = secondHash(hash1);
+        for (Slice slice : slices) {
+            if (slice.contains(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ids added; repeated puts of a member are not counted
+    public long approximateCount() {
+        return count.get();
+    }
+
+    public long bitSize() {
+        long bits = 0;
+        for (Slice slice : slices) {
+            bits += slice.bits;
+        }
+        return bits;
+    }
+
+    public static long optimalBits(long expectedInsertions, double fpp) {
+        return Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (LN2 * LN2)));
+    }
+
+    public static int optimalHashes(long expectedInsertions, long bits) {
+        return Math.max(1, (int) Math.round((double) bits / expectedInsertions * LN2));
+    }
+
+    // bit positions for the given id in a filter of this size (Kirsch-Mitzenmacher double hashing)
+    public static long[] positions(String value, long bits, int hashes) {
+        long hash1 = hash(value);
+        long hash2 = secondHash(hash1);
+        long[] positions = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            positions[i] = Math.floorMod(hash1 + i * hash2, bits);
+        }
+        return positions;
+    }
+
+    private synchronized Slice grow(Slice full) {
+        Slice newest = slices.get(slices.size() - 1);
+        if (newest != full) {
+            return newest;
+        }
+        newest = new Slice(full.capacity * 2, full.fpp / 2);
+        slices.add(newest);
+        return newest;
+    }
+
+    // FNV-1a over UTF-8, finished with the murmur3 mixer
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    // odd, so the probe sequence visits distinct bits
+    private static long secondHash(long hash1) {
+        return mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1L;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static final class Slice {
+        private final long capacity;
+        private final double fpp;
+        private final long bits;
+        private final int hashes;
+        private final AtomicLongArray words;
+        private final AtomicLong inserted = new AtomicLong();
+
+        private Slice(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            this.bits = optimalBits(capacity, fpp);
+            this.hashes = optimalHashes(capacity, bits);
+            this.words = new AtomicLongArray((int) ((bits + 63) >>> 6));
+        }
+
+        private boolean contains(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void set(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = words.get(index);
+                } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+            }
+        }
+    }
+}
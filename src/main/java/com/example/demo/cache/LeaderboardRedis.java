@@ -1,72 +1,427 @@
 package com.example.demo.cache;
 
+import com.example.demo.event.PointsChangedEvent;
+import com.example.demo.model.points.cache.LeaderboardWindow;
 import com.example.demo.model.points.cache.RedisKeys;
-import com.example.demo.model.points.entity.UserPoints;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
 public class LeaderboardRedis {
 
-    private static final DefaultRedisScript<Long> REPLACE_TOP_SCRIPT;
+    private static final long REBUILD_TTL_SECONDS = 3600;
+
+    private static final DefaultRedisScript<Long> APPLY_CHANGES_SCRIPT;
+    private static final DefaultRedisScript<Long> REMOVE_USER_SCRIPT;
+    private static final DefaultRedisScript<Long> STAGE_CHUNK_SCRIPT;
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SWAP_STAGING_SCRIPT;
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> PROJECT_SCRIPT;
+    private static final DefaultRedisScript<Long> RESYNC_SCRIPT;
 
     static {
-        REPLACE_TOP_SCRIPT = new DefaultRedisScript<>();
-        REPLACE_TOP_SCRIPT.setScriptText(
-                "redis.call('DEL', KEYS[1]) " +
-                "if #ARGV == 0 then return 1 end " +
-                "for i=1,#ARGV,2 do " +
-                "redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i+1]) " +
+        // KEYS: version, then (board, rebuild marker) pairs
+        // ARGV: board count n, n ttls (0 keeps the board persistent), then (userId, delta) pairs.
+        // Users touched while a board is being rebuilt are remembered so the
+        // rebuild can re-read them after the swap.
+        APPLY_CHANGES_SCRIPT = new DefaultRedisScript<>();
+        APPLY_CHANGES_SCRIPT.setScriptText(
+                "local n = tonumber(ARGV[1]) " +
+                "for b=1,n do " +
+                "  local board = KEYS[b*2] " +
+                "  local marker = KEYS[b*2+1] " +
+                "  local rebuilding = redis.call('EXISTS', marker) == 1 " +
+                "  for i=n+2,#ARGV,2 do " +
+                "    redis.call('ZINCRBY', board, ARGV[i+1], ARGV[i]) " +
+                "    if rebuilding then redis.call('SADD', marker, ARGV[i]) end " +
+                "  end " +
+                "  if ARGV[b+1] ~= '0' then redis.call('EXPIRE', board, ARGV[b+1]) end " +
+                "end " +
+                "return redis.call('INCR', KEYS[1])");
+        APPLY_CHANGES_SCRIPT.setResultType(Long.class);
+
+        // KEYS: version, then (board, rebuild marker) pairs; ARGV[1]: userId
+        REMOVE_USER_SCRIPT = new DefaultRedisScript<>();
+        REMOVE_USER_SCRIPT.setScriptText(
+                "for b=2,#KEYS,2 do " +
+                "  redis.call('ZREM', KEYS[b], ARGV[1]) " +
+                "  if redis.call('EXISTS', KEYS[b+1]) == 1 then redis.call('SADD', KEYS[b+1], ARGV[1]) end " +
+                "end " +
+                "return redis.call('INCR', KEYS[1])");
+        REMOVE_USER_SCRIPT.setResultType(Long.class);
+
+        // KEYS: staging, rebuild marker; ARGV[1]: ttl, then (score, member) pairs
+        STAGE_CHUNK_SCRIPT = new DefaultRedisScript<>();
+        STAGE_CHUNK_SCRIPT.setScriptText(
+                "for i=2,#ARGV,2 do " +
+                "  redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i+1]) " +
+                "end " +
+                "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+                "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+                "return redis.call('ZCARD', KEYS[1])");
+        STAGE_CHUNK_SCRIPT.setResultType(Long.class);
+
+        // KEYS: staging, board, rebuild marker; ARGV[1]: board ttl (0 = persistent)
+        // returns the users touched during the rebuild
+        SWAP_STAGING_SCRIPT = new DefaultRedisScript<>();
+        SWAP_STAGING_SCRIPT.setScriptText(
+                "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+                "  redis.call('RENAME', KEYS[1], KEYS[2]) " +
+                "  if ARGV[1] == '0' then redis.call('PERSIST', KEYS[2]) " +
+                "  else redis.call('EXPIRE', KEYS[2], ARGV[1]) end " +
+                "else " +
+                "  redis.call('DEL', KEYS[2]) " +
+                "end " +
+                "local touched = redis.call('SMEMBERS', KEYS[3]) " +
+                "redis.call('DEL', KEYS[3]) " +
+                "return touched");
+        SWAP_STAGING_SCRIPT.setResultType(List.class);
+
+        // KEYS: version, then (board, rebuild marker) pairs, the all-time board first,
+        //       then one applied-version key per user in ARGV order
+        // ARGV: board count n, n ttls, applied-version ttl, then per user: userId, point count,
+        //       and per point in version order: version, amount, total, three window board indexes.
+        // A point is applied only if it is the next version after the user's watermark, so
+        // redeliveries are skipped; a missing version stops the user and is returned for a resync.
+        // The watermark expires with the cached totals; an idle user's next event is then a gap.
+        PROJECT_SCRIPT = new DefaultRedisScript<>();
+        PROJECT_SCRIPT.setScriptText(
+                "local n = tonumber(ARGV[1]) " +
+                "local appliedTtl = ARGV[n+2] " +
+                "local rebuilding = {} " +
+                "for b=1,n do rebuilding[b] = redis.call('EXISTS', KEYS[1+b*2]) == 1 end " +
+                "local touched = {} " +
+                "local gaps = {} " +
+                "local changed = 0 " +
+                "local u = 0 " +
+                "local i = n + 3 " +
+                "while i <= #ARGV do " +
+                "  local user = ARGV[i] " +
+                "  local count = tonumber(ARGV[i+1]) " +
+                "  i = i + 2 " +
+                "  u = u + 1 " +
+                "  local appliedKey = KEYS[1+n*2+u] " +
+                "  local applied = tonumber(redis.call('GET', appliedKey) or '0') " +
+                "  local appliedArg = nil " +
+                "  local total = nil " +
+                "  local gap = false " +
+                "  for p=1,count do " +
+                "    local version = tonumber(ARGV[i]) " +
+                "    if not gap and version > applied then " +
+                "      if version == applied + 1 then " +
+                "        for w=3,5 do " +
+                "          local b = tonumber(ARGV[i+w]) " +
+                "          redis.call('ZINCRBY', KEYS[b*2], ARGV[i+1], user) " +
+                "          touched[b] = true " +
+                "          if rebuilding[b] then redis.call('SADD', KEYS[1+b*2], user) end " +
+                "        end " +
+                "        applied = version " +
+                "        appliedArg = ARGV[i] " +
+                "        total = ARGV[i+2] " +
+                "      else " +
+                "        gap = true " +
+                "      end " +
+                "    end " +
+                "    i = i + 6 " +
+                "  end " +
+                "  if total then " +
+                "    redis.call('ZADD', KEYS[2], total, user) " +
+                "    if rebuilding[1] then redis.call('SADD', KEYS[3], user) end " +
+                "    redis.call('SET', appliedKey, appliedArg, 'EX', appliedTtl) " +
+                "    changed = changed + 1 " +
+                "  end " +
+                "  if gap then table.insert(gaps, user) end " +
+                "end " +
+                "for b=2,n do " +
+                "  if touched[b] and ARGV[b+1] ~= '0' then redis.call('EXPIRE', KEYS[b*2], ARGV[b+1]) end " +
                 "end " +
-                "return 1");
-        REPLACE_TOP_SCRIPT.setResultType(Long.class);
+                "if changed > 0 then redis.call('INCR', KEYS[1]) end " +
+                "return gaps");
+        PROJECT_SCRIPT.setResultType(List.class);
+
+        // KEYS: the user's applied-version key, version, then (board, rebuild marker) pairs
+        // ARGV: userId, version read from MySQL, applied-version ttl, then per board: score ('' removes the user) and ttl
+        RESYNC_SCRIPT = new DefaultRedisScript<>();
+        RESYNC_SCRIPT.setScriptText(
+                "local applied = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+                "if tonumber(ARGV[2]) < applied then return 0 end " +
+                "for b=1,(#KEYS-2)/2 do " +
+                "  local score = ARGV[2+b*2] " +
+                "  local ttl = ARGV[3+b*2] " +
+                "  if score == '' then redis.call('ZREM', KEYS[1+b*2], ARGV[1]) " +
+                "  else redis.call('ZADD', KEYS[1+b*2], score, ARGV[1]) end " +
+                "  if ttl ~= '0' then redis.call('EXPIRE', KEYS[1+b*2], ttl) end " +
+                "  if redis.call('EXISTS', KEYS[2+b*2]) == 1 then redis.call('SADD', KEYS[2+b*2], ARGV[1]) end " +
+                "end " +
+                "redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3]) " +
+                "return redis.call('INCR', KEYS[2])");
+        RESYNC_SCRIPT.setResultType(Long.class);
     }
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // projection watermarks live as long as the cached totals
+    @Value("${demo.cache.points-ttl-seconds:600}")
+    private long appliedTtlSeconds;
+
+    public Set<ZSetOperations.TypedTuple<String>> getRange(String boardKey, long offset, int limit) {
+        return stringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(boardKey, offset, offset + limit - 1);
+    }
 
     public Set<ZSetOperations.TypedTuple<String>> getTop(int limit) {
-        @SuppressWarnings("unchecked")
-        Set<ZSetOperations.TypedTuple<String>> entries =
-                (Set<ZSetOperations.TypedTuple<String>>) (Set<?>) redisTemplate.opsForZSet()
-                        .reverseRangeWithScores(RedisKeys.LEADERBOARD_KEY, 0, limit - 1);
-        return entries;
-    }
-
-    public void replaceTop(List<UserPoints> topUsers) {
-        List<String> keys = List.of(RedisKeys.LEADERBOARD_KEY);
-        List<Object> args = new ArrayList<>();
-        if (topUsers == null || topUsers.isEmpty()) {
-            Long result = redisTemplate.execute(REPLACE_TOP_SCRIPT, keys);
-            if (result == null) {
-                throw new IllegalStateException("Redis lua script failed for leaderboard replace");
-            }
+        return getRange(RedisKeys.LEADERBOARD_KEY, 0, limit);
+    }
+
+    public Long getRank(String boardKey, String userId) {
+        return stringRedisTemplate.opsForZSet().reverseRank(boardKey, userId);
+    }
+
+    public Double getScore(String boardKey, String userId) {
+        return stringRedisTemplate.opsForZSet().score(boardKey, userId);
+    }
+
+    public boolean exists() {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisKeys.LEADERBOARD_KEY));
+    }
+
+    // the all-time board plus the daily, weekly and monthly windows containing the commit time
+    public void applyChanges(List<PointsChangedEvent> changes, Instant at) {
+        if (changes.isEmpty()) {
             return;
         }
-        for (UserPoints user : topUsers) {
-            if (user == null || user.getUserId() == null) {
-                continue;
-            }
-            if (user.getTotalPoints() == null) {
-                continue;
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (PointsChangedEvent change : changes) {
+            deltas.merge(change.userId(), change.amount(), Long::sum);
+        }
+        LeaderboardWindow[] windows = LeaderboardWindow.values();
+        List<String> args = new ArrayList<>(2 + windows.length + deltas.size() * 2);
+        args.add(Integer.toString(windows.length + 1));
+        args.add("0");
+        for (LeaderboardWindow window : windows) {
+            args.add(Long.toString(window.ttl().toSeconds()));
+        }
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            args.add(entry.getKey());
+            args.add(Long.toString(entry.getValue()));
+        }
+        Long result = stringRedisTemplate.execute(APPLY_CHANGES_SCRIPT, boardKeys(at), args.toArray());
+        if (result == null) {
+            throw new IllegalStateException("Redis lua script failed for leaderboard update");
+        }
+    }
+
+    // earlier windows keep the user until they expire
+    public void removeUser(String userId, Instant at) {
+        Long result = stringRedisTemplate.execute(REMOVE_USER_SCRIPT, boardKeys(at), userId);
+        if (result == null) {
+            throw new IllegalStateException("Redis lua script failed for leaderboard remove");
+        }
+    }
+
+    // applies committed points in version order per user; returns the users that need a resync
+    @SuppressWarnings("unchecked")
+    public List<String> project(Map<String, List<ProjectedPoint>> pointsByUser) {
+        if (pointsByUser.isEmpty()) {
+            return List.of();
+        }
+        List<String> keys = new ArrayList<>();
+        keys.add(RedisKeys.LEADERBOARD_VERSION_KEY);
+        keys.add(RedisKeys.LEADERBOARD_KEY);
+        keys.add(rebuildKey(RedisKeys.LEADERBOARD_KEY));
+        List<String> ttls = new ArrayList<>();
+        ttls.add("0");
+        Map<String, Integer> boardIndexes = new HashMap<>();
+        List<String> appliedKeys = new ArrayList<>(pointsByUser.size());
+        List<String> points = new ArrayList<>();
+        for (Map.Entry<String, List<ProjectedPoint>> entry : pointsByUser.entrySet()) {
+            appliedKeys.add(appliedKey(entry.getKey()));
+            points.add(entry.getKey());
+            points.add(Integer.toString(entry.getValue().size()));
+            for (ProjectedPoint point : entry.getValue()) {
+                points.add(Long.toString(point.version()));
+                points.add(Long.toString(point.amount()));
+                points.add(Long.toString(point.total()));
+                for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                    String key = window.key(point.createdAt());
+                    Integer index = boardIndexes.get(key);
+                    if (index == null) {
+                        keys.add(key);
+                        keys.add(rebuildKey(key));
+                        ttls.add(Long.toString(window.ttl().toSeconds()));
+                        index = ttls.size();
+                        boardIndexes.put(key, index);
+                    }
+                    points.add(Integer.toString(index));
+                }
             }
-            args.add(user.getTotalPoints().doubleValue());
-            args.add(user.getUserId());
         }
-        Long result = redisTemplate.execute(REPLACE_TOP_SCRIPT, keys, args.toArray());
+        keys.addAll(appliedKeys);
+        List<String> args = new ArrayList<>(2 + ttls.size() + points.size());
+        args.add(Integer.toString(ttls.size()));
+        args.addAll(ttls);
+        args.add(Long.toString(appliedTtlSeconds));
+        args.addAll(points);
+        List<Object> gaps = stringRedisTemplate.execute(PROJECT_SCRIPT, keys, args.toArray());
+        if (gaps == null) {
+            throw new IllegalStateException("Redis lua script failed for leaderboard projection");
+        }
+        List<String> userIds = new ArrayList<>(gaps.size());
+        for (Object userId : gaps) {
+            userIds.add(userId.toString());
+        }
+        return userIds;
+    }
+
+    // overwrites the user's scores with values read from MySQL at the given version
+    public void resync(String userId, long version, Long total, List<WindowScore> windows) {
+        List<String> keys = new ArrayList<>();
+        keys.add(appliedKey(userId));
+        keys.add(RedisKeys.LEADERBOARD_VERSION_KEY);
+        keys.add(RedisKeys.LEADERBOARD_KEY);
+        keys.add(rebuildKey(RedisKeys.LEADERBOARD_KEY));
+        List<String> args = new ArrayList<>();
+        args.add(userId);
+        args.add(Long.toString(version));
+        args.add(Long.toString(appliedTtlSeconds));
+        args.add(total == null ? "" : Long.toString(total));
+        args.add("0");
+        for (WindowScore window : windows) {
+            keys.add(window.key());
+            keys.add(rebuildKey(window.key()));
+            args.add(window.total() == null ? "" : Long.toString(window.total()));
+            args.add(Long.toString(window.ttl().toSeconds()));
+        }
+        Long result = stringRedisTemplate.execute(RESYNC_SCRIPT, keys, args.toArray());
+        if (result == null) {
+            throw new IllegalStateException("Redis lua script failed for leaderboard resync");
+        }
+    }
+
+    public void clearApplied(String userId) {
+        stringRedisTemplate.delete(appliedKey(userId));
+    }
+
+    // after a delete: the tombstone's version is applied, so the next add is the next version
+    public void markApplied(String userId, long version) {
+        stringRedisTemplate.opsForValue().set(
+                appliedKey(userId), Long.toString(version), Duration.ofSeconds(appliedTtlSeconds));
+    }
+
+    public void setScores(String boardKey, Map<String, Long> scores) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Map.Entry<String, Long> score : scores.entrySet()) {
+            tuples.add(ZSetOperations.TypedTuple.of(score.getKey(), score.getValue().doubleValue()));
+        }
+        stringRedisTemplate.opsForZSet().add(boardKey, tuples);
+    }
+
+    public void removeUsers(String boardKey, Collection<String> userIds) {
+        if (!userIds.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(boardKey, userIds.toArray());
+        }
+    }
+
+    public long getVersion() {
+        String version = stringRedisTemplate.opsForValue().get(RedisKeys.LEADERBOARD_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    public String beginRebuild(String boardKey) {
+        String stagingKey = boardKey + RedisKeys.LEADERBOARD_STAGING_SUFFIX + UUID.randomUUID();
+        String rebuildKey = rebuildKey(boardKey);
+        stringRedisTemplate.delete(rebuildKey);
+        // placeholder member so the marker exists before the first change arrives
+        stringRedisTemplate.opsForSet().add(rebuildKey, "");
+        stringRedisTemplate.expire(rebuildKey, Duration.ofSeconds(REBUILD_TTL_SECONDS));
+        return stagingKey;
+    }
+
+    public void stageChunk(String boardKey, String stagingKey, Map<String, Long> scores) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(1 + scores.size() * 2);
+        args.add(Long.toString(REBUILD_TTL_SECONDS));
+        for (Map.Entry<String, Long> score : scores.entrySet()) {
+            args.add(Long.toString(score.getValue()));
+            args.add(score.getKey());
+        }
+        Long result = stringRedisTemplate.execute(
+                STAGE_CHUNK_SCRIPT,
+                List.of(stagingKey, rebuildKey(boardKey)),
+                args.toArray());
         if (result == null) {
-            throw new IllegalStateException("Redis lua script failed for leaderboard replace");
+            throw new IllegalStateException("Redis lua script failed for leaderboard staging");
         }
     }
 
-    public void removeUser(String userId) {
-        redisTemplate.opsForZSet().remove(RedisKeys.LEADERBOARD_KEY, userId);
+    @SuppressWarnings("unchecked")
+    public List<String> swapIn(String boardKey, String stagingKey, Duration ttl) {
+        List<Object> touched = stringRedisTemplate.execute(
+                SWAP_STAGING_SCRIPT,
+                List.of(stagingKey, boardKey, rebuildKey(boardKey)),
+                ttl == null ? "0" : Long.toString(ttl.toSeconds()));
+        List<String> userIds = new ArrayList<>();
+        if (touched != null) {
+            for (Object userId : touched) {
+                if (userId != null && !userId.toString().isEmpty()) {
+                    userIds.add(userId.toString());
+                }
+            }
+        }
+        return userIds;
+    }
+
+    public void abortRebuild(String boardKey, String stagingKey) {
+        stringRedisTemplate.delete(List.of(stagingKey, rebuildKey(boardKey)));
+    }
+
+    public record ProjectedPoint(long version, long amount, long total, Instant createdAt) {
+    }
+
+    public record WindowScore(String key, Duration ttl, Long total) {
+    }
+
+    private String appliedKey(String userId) {
+        return RedisKeys.PROJECTION_APPLIED + userId;
+    }
+
+    private String rebuildKey(String boardKey) {
+        return boardKey + RedisKeys.LEADERBOARD_REBUILD_SUFFIX;
+    }
+
+    private List<String> boardKeys(Instant at) {
+        List<String> keys = new ArrayList<>();
+        keys.add(RedisKeys.LEADERBOARD_VERSION_KEY);
+        keys.add(RedisKeys.LEADERBOARD_KEY);
+        keys.add(rebuildKey(RedisKeys.LEADERBOARD_KEY));
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            String key = window.key(at);
+            keys.add(key);
+            keys.add(rebuildKey(key));
+        }
+        return keys;
     }
 }
@@ -0,0 +1,93 @@
+package com.example.demo.cache;
+
+import com.example.demo.controller.dto.PointResponse;
+import com.example.demo.model.points.cache.RedisKeys;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// newest-first list of a user's most recent points; filled on read and dropped on every write,
+// so a fill that races a write can serve a stale first page until the TTL expires
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointHistoryRedis {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${demo.history.cache-size:50}")
+    private int cacheSize;
+
+    @Value("${demo.history.cache-ttl-seconds:300}")
+    private long ttlSeconds;
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public String getKey(String userId) {
+        return RedisKeys.USER_POINT_HISTORY + userId;
+    }
+
+    // null when the list is not cached
+    public List<PointResponse> getRecent(String userId, int limit) {
+        List<String> values = stringRedisTemplate.opsForList().range(getKey(userId), 0, limit - 1);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        List<PointResponse> rows = new ArrayList<>(values.size());
+        try {
+            for (String value : values) {
+                rows.add(objectMapper.readValue(value, PointResponse.class));
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("[PointHistoryRedis][getRecent] unreadable entry userId={}", userId, ex);
+            stringRedisTemplate.delete(getKey(userId));
+            return null;
+        }
+        return rows;
+    }
+
+    public void store(String userId, List<PointResponse> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        byte[][] values = new byte[rows.size()][];
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                values[i] = objectMapper.writeValueAsBytes(rows.get(i));
+            }
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("failed to serialize point history", ex);
+        }
+        byte[] key = getKey(userId).getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(key);
+            connection.listCommands().rPush(key, values);
+            connection.keyCommands().expire(key, ttlSeconds);
+            return null;
+        });
+    }
+
+    public void invalidate(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            keys.add(getKey(userId));
+        }
+        stringRedisTemplate.delete(keys);
+    }
+}
@@ -1,80 +1,238 @@
 package com.example.demo.cache;
 
+import com.example.demo.controller.dto.CacheLoadStatsResponse;
+import com.example.demo.model.points.cache.RedisKeys;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class RedisCacheLoadGuard {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
 
+    static {
+        // KEYS[1]: load lock; ARGV[1]: the holder's token. One step, so a lock that expired and
+        // was taken by another node between a GET and a DEL is never deleted.
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setScriptText(
+                "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+                "return 0");
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${demo.cache.db-fallback-max-concurrency:16}")
+    private int dbFallbackMaxConcurrency;
+
+    // one in-flight load per key in this JVM; other local callers join it
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    // completed when another node publishes that it has loaded the key
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> remoteLoads = new ConcurrentHashMap<>();
+
+    private final AtomicLong dbLoads = new AtomicLong();
+    private final AtomicLong coalescedWaits = new AtomicLong();
+    private final AtomicLong remoteWaits = new AtomicLong();
+    private final AtomicLong dbFallbacks = new AtomicLong();
+    private final AtomicLong dbFallbacksRejected = new AtomicLong();
+
+    private Semaphore dbFallbackPermits;
+
+    @PostConstruct
+    public void start() {
+        dbFallbackPermits = new Semaphore(dbFallbackMaxConcurrency);
+        registerOutcome("db_load", dbLoads);
+        registerOutcome("coalesced", coalescedWaits);
+        registerOutcome("remote_wait", remoteWaits);
+        registerOutcome("db_fallback", dbFallbacks);
+        registerOutcome("db_fallback_rejected", dbFallbacksRejected);
+        Gauge.builder("points.cache.load.in_flight", inFlight, ConcurrentHashMap::size).register(meterRegistry);
+        listenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    String cacheKey = new String(message.getBody(), StandardCharsets.UTF_8);
+                    CompletableFuture<Void> signal = remoteLoads.remove(cacheKey);
+                    if (signal != null) {
+                        signal.complete(null);
+                    }
+                },
+                new ChannelTopic(RedisKeys.CACHE_LOADED_CHANNEL));
+    }
+
+    @SuppressWarnings("unchecked")
     public <T> T getOrLoad(
             String cacheKey,
             Supplier<T> cacheGetter,
             Consumer<T> cacheSetter,
             Supplier<T> dbLoader,
-            int maxRetries,
             long ttlMs,
-            long sleepMs) {
-        String lockKey = cacheKey + ":lock";
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            T cached = cacheGetter.get();
-            if (cached != null) {
-                return cached;
-            }
-            try (LockHandle handle = tryAcquire(lockKey, ttlMs)) {
-                if (handle != null) {
-                    T loaded = dbLoader.get();
-                    if (loaded != null) {
-                        cacheSetter.accept(loaded);
-                    }
-                    return loaded;
-                }
-            }
-            sleepQuietly(sleepMs);
+            long waitMs) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(cacheKey, created);
+        if (existing != null) {
+            coalescedWaits.incrementAndGet();
+            return (T) await(existing, ttlMs + waitMs, cacheKey);
+        }
+        try {
+            T value = loadOnce(cacheKey, cacheGetter, cacheSetter, dbLoader, ttlMs, waitMs);
+            created.complete(value);
+            return value;
+        } catch (RuntimeException ex) {
+            created.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(cacheKey, created);
         }
-        throw new IllegalStateException("cache not available after retries for key: " + cacheKey);
     }
 
-    public void withLock(
+    public CacheLoadStatsResponse stats() {
+        CacheLoadStatsResponse response = new CacheLoadStatsResponse();
+        response.setDbLoads(dbLoads.get());
+        response.setCoalescedWaits(coalescedWaits.get());
+        response.setRemoteWaits(remoteWaits.get());
+        response.setDbFallbacks(dbFallbacks.get());
+        response.setDbFallbacksRejected(dbFallbacksRejected.get());
+        response.setInFlight(inFlight.size());
+        return response;
+    }
+
+    private <T> T loadOnce(
             String cacheKey,
-            int maxRetries,
+            Supplier<T> cacheGetter,
+            Consumer<T> cacheSetter,
+            Supplier<T> dbLoader,
             long ttlMs,
-            long sleepMs,
-            Runnable action) {
+            long waitMs) {
+        T cached = cacheGetter.get();
+        if (cached != null) {
+            return cached;
+        }
         String lockKey = cacheKey + ":lock";
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try (LockHandle handle = tryAcquire(lockKey, ttlMs)) {
-                if (handle != null) {
-                    action.run();
-                    return;
-                }
+        try (LockHandle handle = tryAcquire(lockKey, ttlMs)) {
+            if (handle != null) {
+                return loadAndPublish(cacheKey, cacheSetter, dbLoader);
             }
-            sleepQuietly(sleepMs);
         }
-        throw new IllegalStateException("lock not available after retries for key: " + cacheKey);
+
+        remoteWaits.incrementAndGet();
+        CompletableFuture<Void> signal = remoteLoads.computeIfAbsent(cacheKey, key -> new CompletableFuture<>());
+        Timer.Sample wait = Timer.start(meterRegistry);
+        String waitOutcome = "notified";
+        try {
+            // the holder may have published before we registered
+            T published = cacheGetter.get();
+            if (published != null) {
+                waitOutcome = "published";
+                return published;
+            }
+            signal.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ex) {
+            waitOutcome = "timeout";
+            log.debug("[RedisCacheLoadGuard][loadOnce] no load notification key={}", cacheKey);
+        } catch (InterruptedException ex) {
+            waitOutcome = "interrupted";
+            Thread.currentThread().interrupt();
+        } finally {
+            remoteLoads.remove(cacheKey, signal);
+            wait.stop(Timer.builder("points.cache.lock.wait")
+                    .tag("outcome", waitOutcome)
+                    .register(meterRegistry));
+        }
+
+        T published = cacheGetter.get();
+        if (published != null) {
+            return published;
+        }
+        // the holder died or is slow; take over if its lock has expired
+        try (LockHandle handle = tryAcquire(lockKey, ttlMs)) {
+            if (handle != null) {
+                return loadAndPublish(cacheKey, cacheSetter, dbLoader);
+            }
+        }
+        return fallback(cacheKey, dbLoader);
+    }
+
+    private <T> T loadAndPublish(String cacheKey, Consumer<T> cacheSetter, Supplier<T> dbLoader) {
+        dbLoads.incrementAndGet();
+        T loaded = dbLoader.get();
+        if (loaded != null) {
+            cacheSetter.accept(loaded);
+        }
+        try {
+            stringRedisTemplate.convertAndSend(RedisKeys.CACHE_LOADED_CHANNEL, cacheKey);
+        } catch (Exception ex) {
+            // waiters time out and re-read the cache
+            log.warn("[RedisCacheLoadGuard][loadAndPublish] publish failed key={}", cacheKey, ex);
+        }
+        return loaded;
     }
 
-    private void sleepQuietly(long sleepMs) {
-        if (sleepMs <= 0) {
-            return;
+    private <T> T fallback(String cacheKey, Supplier<T> dbLoader) {
+        if (!dbFallbackPermits.tryAcquire()) {
+            dbFallbacksRejected.incrementAndGet();
+            throw new IllegalStateException("db fallback limit reached for key: " + cacheKey);
         }
         try {
-            Thread.sleep(sleepMs);
+            dbFallbacks.incrementAndGet();
+            log.warn("[RedisCacheLoadGuard][fallback] cache wait timeout, fallback to db key={}", cacheKey);
+            return dbLoader.get();
+        } finally {
+            dbFallbackPermits.release();
+        }
+    }
+
+    private void registerOutcome(String outcome, AtomicLong counter) {
+        FunctionCounter.builder("points.cache.load", counter, AtomicLong::get)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Object await(CompletableFuture<Object> future, long timeoutMs, String cacheKey) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("cache load failed for key: " + cacheKey, ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException("cache load timed out for key: " + cacheKey);
         } catch (InterruptedException ex) {
             Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for key: " + cacheKey);
         }
     }
 
     private LockHandle tryAcquire(String lockKey, long ttlMs) {
         String token = UUID.randomUUID().toString();
-        Boolean acquired = redisTemplate.opsForValue()
+        Boolean acquired = stringRedisTemplate.opsForValue()
                 .setIfAbsent(lockKey, token, Duration.ofMillis(ttlMs));
         if (Boolean.TRUE.equals(acquired)) {
             return new LockHandle(lockKey, token);
@@ -98,10 +256,7 @@ public class RedisCacheLoadGuard {
                 return;
             }
             closed = true;
-            Object current = redisTemplate.opsForValue().get(lockKey);
-            if (current instanceof String && token.equals(current)) {
-                redisTemplate.delete(lockKey);
-            }
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token);
         }
     }
 }
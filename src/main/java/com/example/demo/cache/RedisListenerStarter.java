@@ -0,0 +1,37 @@
+package com.example.demo.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Starts the pub/sub listener container once Redis answers. Started by the context, a
+// container that cannot subscribe fails the whole startup; the application should come up
+// and serve from MySQL instead. After its first subscription the container recovers
+// dropped connections on its own, and each listener hears about the resubscribe.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisListenerStarter {
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private volatile boolean started;
+
+    @Scheduled(fixedDelayString = "${demo.cache.listener-start-retry-ms:5000}")
+    public void start() {
+        if (started) {
+            return;
+        }
+        try {
+            listenerContainer.start();
+            started = true;
+            log.info("[RedisListenerStarter][start] listening");
+        } catch (Exception ex) {
+            // a failed start leaves the container marked running, and start() would do nothing
+            listenerContainer.stop();
+            log.warn("[RedisListenerStarter][start] subscribe failed, retrying: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.points.cache.RedisKeys;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A per-task lease in Redis: the node holding it runs the task, everyone else skips.
+// The holder extends it on every run; if it dies, the lease expires and the next
+// node to tick takes over.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchedulerLease {
+
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        // KEYS[1]: lease; ARGV: node id, ttl ms. Returns 1 when the caller holds the lease afterwards.
+        ACQUIRE_SCRIPT = new DefaultRedisScript<>();
+        ACQUIRE_SCRIPT.setScriptText(
+                "local holder = redis.call('GET', KEYS[1]) " +
+                "if not holder then " +
+                "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+                "  return 1 " +
+                "end " +
+                "if holder == ARGV[1] then " +
+                "  redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                "  return 1 " +
+                "end " +
+                "return 0");
+        ACQUIRE_SCRIPT.setResultType(Long.class);
+
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setScriptText(
+                "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+                "return 0");
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    // acquires the lease or extends it if this node already holds it
+    public boolean tryAcquire(String task, Duration ttl) {
+        Long result = stringRedisTemplate.execute(
+                ACQUIRE_SCRIPT,
+                List.of(RedisKeys.SCHEDULER_LEASE + task),
+                nodeId,
+                Long.toString(ttl.toMillis()));
+        boolean acquired = result != null && result == 1L;
+        if (acquired ? held.add(task) : held.remove(task)) {
+            log.info("[SchedulerLease][tryAcquire] task={} node={} leader={}", task, nodeId, acquired);
+        }
+        return acquired;
+    }
+
+    public boolean isHeld(String task) {
+        return held.contains(task);
+    }
+
+    public void release(String task) {
+        held.remove(task);
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(RedisKeys.SCHEDULER_LEASE + task), nodeId);
+    }
+
+    // hand over right away on a clean shutdown instead of waiting for expiry
+    @PreDestroy
+    public void releaseAll() {
+        for (String task : List.copyOf(held)) {
+            try {
+                release(task);
+            } catch (Exception ex) {
+                log.warn("[SchedulerLease][releaseAll] release failed task={}", task, ex);
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
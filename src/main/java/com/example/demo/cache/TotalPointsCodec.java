@@ -0,0 +1,76 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Cached totals are stored as "<total>:<version>" in plain decimal, e.g. "1250:37".
+// For realistic totals that is 4-12 bytes, smaller than a fixed 16-byte binary pair,
+// and the Lua scripts can compare versions with string.match.
+public final class TotalPointsCodec {
+
+    private TotalPointsCodec() {
+    }
+
+    public static String encode(CachedTotalPoints cached) {
+        return cached.total() + ":" + cached.version();
+    }
+
+    public static CachedTotalPoints decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        int separator = value.lastIndexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return new CachedTotalPoints(
+                    Long.parseLong(value, 0, separator, 10),
+                    Long.parseLong(value, separator + 1, value.length(), 10));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    // Bucket fields cannot have a TTL of their own before Redis 7.4 (HEXPIRE), so the
+    // scripts append the expiry in epoch seconds: "<total>:<version>:<expiresAt>".
+    // Expired entries, and entries written without an expiry, decode as missing.
+    public static CachedTotalPoints decodeExpiring(String value, long nowSeconds) {
+        if (value == null) {
+            return null;
+        }
+        int separator = value.lastIndexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(value, separator + 1, value.length(), 10) <= nowSeconds) {
+                return null;
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return decode(value.substring(0, separator));
+    }
+
+    // Format written by GenericJackson2JsonRedisSerializer over a JSON string, i.e.
+    // "{\"total\":5}" with the outer quotes. It carried no version, so it decodes as
+    // version 0 and loses to any committed write.
+    public static CachedTotalPoints decodeLegacy(String value, ObjectMapper objectMapper) {
+        if (value == null || value.isEmpty() || value.charAt(0) != '"') {
+            return null;
+        }
+        try {
+            String inner = objectMapper.readValue(value, String.class);
+            JsonNode total = objectMapper.readTree(inner).get("total");
+            if (total == null || !total.canConvertToLong()) {
+                return null;
+            }
+            return new CachedTotalPoints(total.asLong(), 0L);
+        } catch (JsonProcessingException ex) {
+            return null;
+        }
+    }
+}
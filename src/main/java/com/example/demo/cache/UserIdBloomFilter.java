@@ -0,0 +1,316 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.points.cache.RedisKeys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+// Ids of users that have ever had points. A miss means the user certainly has no
+// points, so total lookups can answer 0 without touching Redis or MySQL.
+// Until the first load from user_points completes every id passes.
+//
+// New ids are published so other instances add them too. Publishing is fire-and-forget,
+// so a local miss is also checked against a shared bitmap in Redis (the mirror, on by
+// default), which every instance writes before it publishes. The bitmap has a fixed
+// size, so its own rate only holds up to expected-insertions ids. Notifications missed
+// while unsubscribed, or ids this instance failed to publish, are covered by a rebuild
+// from user_points, which also rewrites the mirror.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserIdBloomFilter {
+
+    private static final Duration STAGING_TTL = Duration.ofHours(1);
+
+    private static final DefaultRedisScript<Long> MIRROR_ADD_SCRIPT;
+    private static final DefaultRedisScript<Long> MIRROR_CHECK_SCRIPT;
+
+    static {
+        // KEYS: bitmaps to set the bits in; ARGV: bit positions
+        MIRROR_ADD_SCRIPT = new DefaultRedisScript<>();
+        MIRROR_ADD_SCRIPT.setScriptText(
+                "for k=1,#KEYS do " +
+                "  for i=1,#ARGV do redis.call('SETBIT', KEYS[k], ARGV[i], 1) end " +
+                "end " +
+                "return #ARGV");
+        MIRROR_ADD_SCRIPT.setResultType(Long.class);
+
+        // KEYS[1]: bitmap; ARGV: bit positions of one id. Returns 1 if all bits are set,
+        // 0 if one is not, and -1 if the bitmap is gone.
+        MIRROR_CHECK_SCRIPT = new DefaultRedisScript<>();
+        MIRROR_CHECK_SCRIPT.setScriptText(
+                "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+                "for i=1,#ARGV do " +
+                "  if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then return 0 end " +
+                "end " +
+                "return 1");
+        MIRROR_CHECK_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${demo.bloom.enabled:true}")
+    private boolean enabled;
+
+    @Value("${demo.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${demo.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Value("${demo.bloom.redis-mirror:true}")
+    private boolean redisMirror;
+
+    // longer than any transaction that adds points
+    @Value("${demo.bloom.recent-window-ms:60000}")
+    private long recentWindowMs;
+
+    private volatile BloomFilter current;
+    // ids added while a rebuild streams user_points go into both filters
+    private volatile BloomFilter building;
+    // per rebuild, so instances rebuilding at the same time do not share a staging bitmap
+    private volatile String stagingKey;
+    // new ids whose rows may not be committed yet when a rebuild snapshots user_points
+    private final Map<String, Long> recentlyAdded = new ConcurrentHashMap<>();
+    // set when this filter may be missing ids; UserIdBloomFilterRebuilder picks it up
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private long mirrorBits;
+    private int mirrorHashes;
+    private Counter rejected;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        mirrorBits = BloomFilter.optimalBits(expectedInsertions, fpp);
+        mirrorHashes = BloomFilter.optimalHashes(expectedInsertions, mirrorBits);
+        rejected = Counter.builder("points.bloom.rejected").register(meterRegistry);
+        Gauge.builder("points.bloom.ids", () -> current == null ? 0 : current.approximateCount())
+                .register(meterRegistry);
+        Gauge.builder("points.bloom.bits", () -> current == null ? 0 : current.bitSize())
+                .register(meterRegistry);
+        listenerContainer.addMessageListener(new AddedListener(), new ChannelTopic(RedisKeys.BLOOM_ADDED_CHANNEL));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean mightContain(String userId) {
+        BloomFilter filter = current;
+        if (!enabled || filter == null || filter.mightContain(userId)) {
+            return true;
+        }
+        if (redisMirror) {
+            long mirror = mirrorCheck(userId);
+            if (mirror != 0) {
+                if (mirror > 0) {
+                    putLocal(userId);
+                } else {
+                    // the bitmap was lost: let ids through until a rebuild has written it again
+                    requestRebuild("mirror missing");
+                }
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void requestRebuild(String reason) {
+        if (rebuildRequested.compareAndSet(false, true)) {
+            log.info("[UserIdBloomFilter][requestRebuild] reason={}", reason);
+        }
+    }
+
+    public boolean takeRebuildRequest() {
+        return rebuildRequested.getAndSet(false);
+    }
+
+    public void addAll(Collection<String> userIds) {
+        if (!enabled) {
+            return;
+        }
+        List<String> added = new ArrayList<>();
+        for (String userId : userIds) {
+            if (putLocal(userId)) {
+                added.add(userId);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        try {
+            if (redisMirror) {
+                String staging = stagingKey;
+                mirrorAdd(staging != null
+                        ? List.of(RedisKeys.BLOOM_USERS_KEY, staging)
+                        : List.of(RedisKeys.BLOOM_USERS_KEY), added);
+            }
+            stringRedisTemplate.convertAndSend(RedisKeys.BLOOM_ADDED_CHANNEL, String.join("\n", added));
+        } catch (Exception ex) {
+            // the ids are in this filter only; a rebuild puts them into the mirror, where
+            // the other instances look on a miss
+            log.warn("[UserIdBloomFilter][addAll] publish failed size={}", added.size(), ex);
+            requestRebuild("publish failed");
+        }
+    }
+
+    public void beginRebuild(long sizeHint) {
+        if (redisMirror) {
+            stagingKey = RedisKeys.BLOOM_USERS_KEY + RedisKeys.BLOOM_STAGING_SUFFIX + UUID.randomUUID();
+        }
+        BloomFilter filter = new BloomFilter(Math.max(expectedInsertions, sizeHint), fpp);
+        building = filter;
+        long cutoff = System.currentTimeMillis() - recentWindowMs;
+        recentlyAdded.values().removeIf(addedAt -> addedAt < cutoff);
+        List<String> recent = new ArrayList<>(recentlyAdded.keySet());
+        for (String userId : recent) {
+            filter.put(userId);
+        }
+        if (redisMirror && !recent.isEmpty()) {
+            addToMirrorStaging(recent);
+        }
+    }
+
+    public void addToRebuild(List<String> userIds) {
+        BloomFilter filter = building;
+        if (filter == null) {
+            throw new IllegalStateException("no bloom filter rebuild in progress");
+        }
+        for (String userId : userIds) {
+            filter.put(userId);
+        }
+        if (redisMirror && !userIds.isEmpty()) {
+            addToMirrorStaging(userIds);
+        }
+    }
+
+    // returns the number of ids loaded so the next rebuild can be sized for it
+    public long completeRebuild() {
+        BloomFilter filter = building;
+        if (filter == null) {
+            throw new IllegalStateException("no bloom filter rebuild in progress");
+        }
+        if (redisMirror) {
+            // nothing is staged when user_points is empty
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(stagingKey))) {
+                stringRedisTemplate.rename(stagingKey, RedisKeys.BLOOM_USERS_KEY);
+                stringRedisTemplate.persist(RedisKeys.BLOOM_USERS_KEY);
+            } else {
+                stringRedisTemplate.delete(RedisKeys.BLOOM_USERS_KEY);
+            }
+        }
+        current = filter;
+        building = null;
+        stagingKey = null;
+        return filter.approximateCount();
+    }
+
+    public void abortRebuild() {
+        building = null;
+        if (stagingKey != null) {
+            stringRedisTemplate.delete(stagingKey);
+            stagingKey = null;
+        }
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    // an id that misses a rebuild's snapshot is either recorded as recent before the
+    // rebuild copies them, or sees the rebuild's filter and is put there directly
+    private boolean putLocal(String userId) {
+        BloomFilter filter = current;
+        // before the first load there is nothing to add to, so report the id as new
+        boolean added = filter == null || filter.put(userId);
+        if (added) {
+            recentlyAdded.put(userId, System.currentTimeMillis());
+        }
+        BloomFilter pending = building;
+        if (pending != null) {
+            pending.put(userId);
+        }
+        return added;
+    }
+
+    // 1 present, 0 absent, -1 unknown
+    private long mirrorCheck(String userId) {
+        try {
+            Long result = stringRedisTemplate.execute(
+                    MIRROR_CHECK_SCRIPT, List.of(RedisKeys.BLOOM_USERS_KEY), positionArgs(userId));
+            return result == null ? -1L : result;
+        } catch (Exception ex) {
+            log.warn("[UserIdBloomFilter][mirrorCheck] mirror check failed userId={}", userId, ex);
+            return -1L;
+        }
+    }
+
+    private void addToMirrorStaging(List<String> userIds) {
+        mirrorAdd(List.of(stagingKey), userIds);
+        // left behind if this instance dies mid-rebuild
+        stringRedisTemplate.expire(stagingKey, STAGING_TTL);
+    }
+
+    private void mirrorAdd(List<String> keys, List<String> userIds) {
+        List<Object> args = new ArrayList<>(userIds.size() * mirrorHashes);
+        for (String userId : userIds) {
+            for (Object position : positionArgs(userId)) {
+                args.add(position);
+            }
+        }
+        stringRedisTemplate.execute(MIRROR_ADD_SCRIPT, keys, args.toArray());
+    }
+
+    private final class AddedListener implements MessageListener, SubscriptionListener {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            for (String userId : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+                putLocal(userId);
+            }
+        }
+
+        // notifications published while the subscription was down are lost
+        @Override
+        public void onChannelSubscribed(byte[] channel, long count) {
+            if (current != null) {
+                requestRebuild("resubscribed");
+            }
+        }
+    }
+
+    private Object[] positionArgs(String userId) {
+        long[] positions = BloomFilter.positions(userId, mirrorBits, mirrorHashes);
+        Object[] args = new Object[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            args[i] = Long.toString(positions[i]);
+        }
+        return args;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.demo.cache;
+
+import com.example.demo.controller.dto.NearCacheStatsResponse;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.example.demo.model.points.cache.RedisKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserTotalPointsNearCache {
+
+    private final UserTotalPointsRedis userTotalPointsRedis;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${demo.cache.near.enabled:true}")
+    private boolean enabled;
+
+    @Value("${demo.cache.near.max-size:50000}")
+    private long maxSize;
+
+    @Value("${demo.cache.near.ttl-ms:5000}")
+    private long ttlMs;
+
+    private Cache<String, CachedTotalPoints> cache;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "points.total.near");
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidation(message),
+                new ChannelTopic(RedisKeys.TOTAL_INVALIDATION_CHANNEL));
+    }
+
+    public CachedTotalPoints get(String userId) {
+        if (!enabled) {
+            return userTotalPointsRedis.getCached(userId);
+        }
+        CachedTotalPoints local = cache.getIfPresent(userId);
+        if (local != null) {
+            return local;
+        }
+        CachedTotalPoints remote = userTotalPointsRedis.getCached(userId);
+        if (remote != null) {
+            cache.put(userId, remote);
+        }
+        return remote;
+    }
+
+    public Map<String, CachedTotalPoints> getAll(Collection<String> userIds) {
+        if (!enabled) {
+            return userTotalPointsRedis.getCachedAll(userIds);
+        }
+        Map<String, CachedTotalPoints> found = new HashMap<>(cache.getAllPresent(userIds));
+        if (found.size() == userIds.size()) {
+            return found;
+        }
+        List<String> remaining = new ArrayList<>(userIds.size() - found.size());
+        for (String userId : userIds) {
+            if (!found.containsKey(userId)) {
+                remaining.add(userId);
+            }
+        }
+        Map<String, CachedTotalPoints> remote = userTotalPointsRedis.getCachedAll(remaining);
+        cache.putAll(remote);
+        found.putAll(remote);
+        return found;
+    }
+
+    public void put(String userId, CachedTotalPoints cached) {
+        if (enabled && cached != null) {
+            cache.put(userId, cached);
+        }
+    }
+
+    public void putAll(Map<String, CachedTotalPoints> totals) {
+        if (enabled) {
+            cache.putAll(totals);
+        }
+    }
+
+    public void invalidate(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        if (enabled) {
+            cache.invalidateAll(userIds);
+        }
+        try {
+            stringRedisTemplate.convertAndSend(RedisKeys.TOTAL_INVALIDATION_CHANNEL, String.join("\n", userIds));
+        } catch (Exception ex) {
+            // other nodes fall back to the TTL
+            log.warn("[UserTotalPointsNearCache][invalidate] publish failed size={}", userIds.size(), ex);
+        }
+    }
+
+    public NearCacheStatsResponse stats() {
+        NearCacheStatsResponse response = new NearCacheStatsResponse();
+        response.setEnabled(enabled);
+        if (!enabled) {
+            return response;
+        }
+        CacheStats stats = cache.stats();
+        response.setSize(cache.estimatedSize());
+        response.setHitCount(stats.hitCount());
+        response.setMissCount(stats.missCount());
+        response.setEvictionCount(stats.evictionCount());
+        response.setHitRate(stats.hitRate());
+        return response;
+    }
+
+    private void onInvalidation(Message message) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        cache.invalidateAll(List.of(body.split("\n")));
+    }
+}
@@ -1,65 +1,379 @@
 package com.example.demo.cache;
 
+import com.example.demo.controller.dto.CacheMemoryReportResponse;
+import com.example.demo.event.PointsChangedEvent;
 import com.example.demo.model.points.cache.CachedTotalPoints;
 import com.example.demo.model.points.cache.RedisKeys;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 @Component
 @RequiredArgsConstructor
 public class UserTotalPointsRedis {
 
+    public static final String LAYOUT_KEY = "key";
+    public static final String LAYOUT_BUCKETED = "bucketed";
+
+    private static final String VERSION_PATTERN = "'^%-?%d+:(%d+)$'";
+    // "<total>:<version>:<expiresAt>", captures version and expiry
+    private static final String BUCKET_VERSION_PATTERN = "'^%-?%d+:(%d+):(%d+)$'";
+
+    private static final DefaultRedisScript<Long> SET_IF_NEWER_SCRIPT;
+    private static final DefaultRedisScript<Long> APPLY_COMMITTED_SCRIPT;
+    private static final DefaultRedisScript<Long> BUCKET_SET_IF_NEWER_SCRIPT;
+    private static final DefaultRedisScript<Long> BUCKET_APPLY_COMMITTED_SCRIPT;
+
+    static {
+        // cache fill after a DB read: never replace a value with a newer version.
+        // ARGV[1] is the TTL, then (value, version) pairs matching KEYS.
+        SET_IF_NEWER_SCRIPT = new DefaultRedisScript<>();
+        SET_IF_NEWER_SCRIPT.setScriptText(
+                "local written = 0 " +
+                "for i=1,#KEYS do " +
+                "  local cur = redis.call('GET', KEYS[i]) " +
+                "  local v = cur and string.match(cur, " + VERSION_PATTERN + ") " +
+                "  if not v or tonumber(v) < tonumber(ARGV[i*2+1]) then " +
+                "    redis.call('SET', KEYS[i], ARGV[i*2], 'EX', ARGV[1]) " +
+                "    written = written + 1 " +
+                "  end " +
+                "end " +
+                "return written");
+        SET_IF_NEWER_SCRIPT.setResultType(Long.class);
+
+        // write-through after commit: ARGV holds (total, version) pairs matching KEYS.
+        // Missing keys stay missing, older or repeated versions are ignored, and
+        // entries that cannot be parsed are dropped so the next read reloads them.
+        APPLY_COMMITTED_SCRIPT = new DefaultRedisScript<>();
+        APPLY_COMMITTED_SCRIPT.setScriptText(
+                "local applied = 0 " +
+                "for i=1,#KEYS do " +
+                "  local cur = redis.call('GET', KEYS[i]) " +
+                "  if cur then " +
+                "    local v = string.match(cur, " + VERSION_PATTERN + ") " +
+                "    if not v then " +
+                "      redis.call('DEL', KEYS[i]) " +
+                "    elseif tonumber(ARGV[i*2]) > tonumber(v) then " +
+                "      redis.call('SET', KEYS[i], ARGV[i*2-1] .. ':' .. ARGV[i*2], 'KEEPTTL') " +
+                "      applied = applied + 1 " +
+                "    end " +
+                "  end " +
+                "end " +
+                "return applied");
+        APPLY_COMMITTED_SCRIPT.setResultType(Long.class);
+
+        // same rules as above with the entry stored as a field of a bucket hash.
+        // Each field carries its own expiry (see TotalPointsCodec.decodeExpiring) taken
+        // from the Redis clock; an expired field counts as missing. A fill also drops the
+        // expired fields of the buckets it touches, and the bucket TTL is reset to the
+        // newest field's expiry so an idle bucket goes away with its last entry.
+        // ARGV[1] is the TTL, then (field, value, version) triples matching KEYS.
+        BUCKET_SET_IF_NEWER_SCRIPT = new DefaultRedisScript<>();
+        BUCKET_SET_IF_NEWER_SCRIPT.setScriptText(
+                "local now = tonumber(redis.call('TIME')[1]) " +
+                "local expiresAt = now + tonumber(ARGV[1]) " +
+                "local written = 0 " +
+                "for i=1,#KEYS do " +
+                "  local field = ARGV[i*3-1] " +
+                "  local cur = redis.call('HGET', KEYS[i], field) " +
+                "  local v, e " +
+                "  if cur then v, e = string.match(cur, " + BUCKET_VERSION_PATTERN + ") end " +
+                "  if not v or tonumber(e) <= now or tonumber(v) < tonumber(ARGV[i*3+1]) then " +
+                "    redis.call('HSET', KEYS[i], field, ARGV[i*3] .. ':' .. expiresAt) " +
+                "    written = written + 1 " +
+                "  end " +
+                "end " +
+                "local swept = {} " +
+                "for i=1,#KEYS do " +
+                "  if not swept[KEYS[i]] then " +
+                "    swept[KEYS[i]] = true " +
+                "    local entries = redis.call('HGETALL', KEYS[i]) " +
+                "    for j=1,#entries,2 do " +
+                "      local _, e = string.match(entries[j+1], " + BUCKET_VERSION_PATTERN + ") " +
+                "      if not e or tonumber(e) <= now then " +
+                "        redis.call('HDEL', KEYS[i], entries[j]) " +
+                "      end " +
+                "    end " +
+                "    redis.call('EXPIRE', KEYS[i], ARGV[1]) " +
+                "  end " +
+                "end " +
+                "return written");
+        BUCKET_SET_IF_NEWER_SCRIPT.setResultType(Long.class);
+
+        // a committed write keeps the field's expiry, like KEEPTTL above
+        BUCKET_APPLY_COMMITTED_SCRIPT = new DefaultRedisScript<>();
+        BUCKET_APPLY_COMMITTED_SCRIPT.setScriptText(
+                "local now = tonumber(redis.call('TIME')[1]) " +
+                "local applied = 0 " +
+                "for i=1,#KEYS do " +
+                "  local field = ARGV[i*3-2] " +
+                "  local cur = redis.call('HGET', KEYS[i], field) " +
+                "  if cur then " +
+                "    local v, e = string.match(cur, " + BUCKET_VERSION_PATTERN + ") " +
+                "    if not v or tonumber(e) <= now then " +
+                "      redis.call('HDEL', KEYS[i], field) " +
+                "    elseif tonumber(ARGV[i*3]) > tonumber(v) then " +
+                "      redis.call('HSET', KEYS[i], field, ARGV[i*3-1] .. ':' .. ARGV[i*3] .. ':' .. e) " +
+                "      applied = applied + 1 " +
+                "    end " +
+                "  end " +
+                "end " +
+                "return applied");
+        BUCKET_APPLY_COMMITTED_SCRIPT.setResultType(Long.class);
+    }
+
     @Value("${demo.cache.points-ttl-seconds:600}")
     private long ttlSeconds;
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    @Value("${demo.cache.total-layout:key}")
+    private String layout;
+
+    // keep buckets under hash-max-listpack-entries (128 by default) so they stay listpack-encoded
+    @Value("${demo.cache.total-buckets:16384}")
+    private int bucketCount;
+
+    @Value("${demo.cache.total-migrate-legacy:true}")
+    private boolean migrateLegacy;
+
+    private final StringRedisTemplate stringRedisTemplate;
     private final ObjectMapper objectMapper;
 
     public String getKey(String userId) {
         return RedisKeys.USER_TOTAL_POINTS + userId;
     }
 
+    public String getBucketKey(String userId) {
+        CRC32 crc = new CRC32();
+        crc.update(userId.getBytes(StandardCharsets.UTF_8));
+        return RedisKeys.USER_TOTAL_POINTS_BUCKET + (crc.getValue() % bucketCount);
+    }
+
     public CachedTotalPoints getCached(String userId) {
-        Object value = redisTemplate.opsForValue().get(getKey(userId));
-        if (value == null) {
-            return null;
-        }
-        if (value instanceof String) {
-            try {
-                return objectMapper.readValue((String) value, CachedTotalPoints.class);
-            } catch (JsonProcessingException ex) {
-                throw new IllegalStateException("Failed to parse cached total points JSON", ex);
+        if (!isBucketed()) {
+            String value = stringRedisTemplate.opsForValue().get(getKey(userId));
+            CachedTotalPoints cached = TotalPointsCodec.decode(value);
+            if (cached == null && migrateLegacy) {
+                cached = TotalPointsCodec.decodeLegacy(value, objectMapper);
             }
+            return cached;
         }
-        if (value instanceof CachedTotalPoints) {
-            return (CachedTotalPoints) value;
+        Object value = stringRedisTemplate.opsForHash().get(getBucketKey(userId), userId);
+        CachedTotalPoints cached = TotalPointsCodec.decodeExpiring((String) value, nowSeconds());
+        if (cached == null && migrateLegacy) {
+            cached = migrateToBucket(userId);
         }
-        if (value instanceof LinkedHashMap<?, ?>) {
-            return objectMapper.convertValue(value, CachedTotalPoints.class);
+        return cached;
+    }
+
+    public Map<String, CachedTotalPoints> getCachedAll(Collection<String> userIds) {
+        List<String> ids = new ArrayList<>(userIds);
+        List<?> values;
+        if (!isBucketed()) {
+            List<String> keys = new ArrayList<>(ids.size());
+            for (String userId : ids) {
+                keys.add(getKey(userId));
+            }
+            values = stringRedisTemplate.opsForValue().multiGet(keys);
+        } else {
+            values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String userId : ids) {
+                    connection.hashCommands().hGet(bytes(getBucketKey(userId)), bytes(userId));
+                }
+                return null;
+            });
+        }
+        Map<String, CachedTotalPoints> found = new HashMap<>();
+        long now = nowSeconds();
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values == null ? null : values.get(i);
+            String raw = value instanceof byte[] rawBytes
+                    ? new String(rawBytes, StandardCharsets.UTF_8)
+                    : (String) value;
+            if (isBucketed()) {
+                CachedTotalPoints cached = TotalPointsCodec.decodeExpiring(raw, now);
+                if (cached != null) {
+                    found.put(ids.get(i), cached);
+                }
+                continue;
+            }
+            CachedTotalPoints cached = TotalPointsCodec.decode(raw);
+            if (cached == null && migrateLegacy) {
+                cached = TotalPointsCodec.decodeLegacy(raw, objectMapper);
+            }
+            if (cached != null) {
+                found.put(ids.get(i), cached);
+            }
         }
-        throw new IllegalStateException("Unexpected value type in Redis: " + value.getClass().getName());
+        return found;
     }
 
     public void set(String userId, CachedTotalPoints cached) {
         if (cached == null) {
             return;
         }
-        try {
-            String payload = objectMapper.writeValueAsString(cached);
-            redisTemplate.opsForValue().set(getKey(userId), payload, Duration.ofSeconds(ttlSeconds));
-        } catch (JsonProcessingException ex) {
-            throw new IllegalStateException("Failed to serialize cached total points JSON", ex);
+        setAll(Map.of(userId, cached));
+    }
+
+    public void setAll(Map<String, CachedTotalPoints> totals) {
+        if (totals.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(totals.size());
+        List<String> args = new ArrayList<>(1 + totals.size() * 3);
+        args.add(Long.toString(ttlSeconds));
+        for (Map.Entry<String, CachedTotalPoints> entry : totals.entrySet()) {
+            if (isBucketed()) {
+                keys.add(getBucketKey(entry.getKey()));
+                args.add(entry.getKey());
+            } else {
+                keys.add(getKey(entry.getKey()));
+            }
+            args.add(TotalPointsCodec.encode(entry.getValue()));
+            args.add(Long.toString(entry.getValue().version()));
         }
+        stringRedisTemplate.execute(
+                isBucketed() ? BUCKET_SET_IF_NEWER_SCRIPT : SET_IF_NEWER_SCRIPT,
+                keys,
+                args.toArray());
+    }
+
+    public void applyCommitted(List<PointsChangedEvent> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<String, PointsChangedEvent> latest = new LinkedHashMap<>();
+        for (PointsChangedEvent change : changes) {
+            latest.merge(change.userId(), change,
+                    (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+        }
+        List<String> keys = new ArrayList<>(latest.size());
+        List<String> args = new ArrayList<>(latest.size() * 3);
+        for (PointsChangedEvent change : latest.values()) {
+            if (isBucketed()) {
+                keys.add(getBucketKey(change.userId()));
+                args.add(change.userId());
+            } else {
+                keys.add(getKey(change.userId()));
+            }
+            args.add(Long.toString(change.total()));
+            args.add(Long.toString(change.version()));
+        }
+        stringRedisTemplate.execute(
+                isBucketed() ? BUCKET_APPLY_COMMITTED_SCRIPT : APPLY_COMMITTED_SCRIPT,
+                keys,
+                args.toArray());
     }
 
     public void deleteTotal(String userId) {
-        redisTemplate.delete(getKey(userId));
+        deleteTotals(List.of(userId));
+    }
+
+    public void deleteTotals(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            keys.add(getKey(userId));
+        }
+        if (!isBucketed()) {
+            stringRedisTemplate.delete(keys);
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : userIds) {
+                connection.hashCommands().hDel(bytes(getBucketKey(userId)), bytes(userId));
+            }
+            if (migrateLegacy) {
+                connection.keyCommands().del(keys.stream().map(this::bytes).toArray(byte[][]::new));
+            }
+            return null;
+        });
+    }
+
+    // samples MEMORY USAGE over existing entries and extrapolates to bytes per cached user
+    public CacheMemoryReportResponse memoryReport(int sampleSize) {
+        String pattern = isBucketed()
+                ? RedisKeys.USER_TOTAL_POINTS_BUCKET + "*"
+                : RedisKeys.USER_TOTAL_POINTS + "*";
+        List<String> sampled = new ArrayList<>(sampleSize);
+        try (Cursor<String> cursor = stringRedisTemplate.scan(
+                ScanOptions.scanOptions().match(pattern).count(1000).build())) {
+            while (cursor.hasNext() && sampled.size() < sampleSize) {
+                String key = cursor.next();
+                if (!isBucketed() && key.endsWith(":lock")) {
+                    continue;
+                }
+                sampled.add(key);
+            }
+        }
+        long bytes = 0;
+        long users = 0;
+        for (String key : sampled) {
+            Long usage = stringRedisTemplate.execute((RedisCallback<Long>) connection -> memoryUsage(connection, key));
+            if (usage == null) {
+                continue;
+            }
+            bytes += usage;
+            users += isBucketed() ? stringRedisTemplate.opsForHash().size(key) : 1;
+        }
+        CacheMemoryReportResponse response = new CacheMemoryReportResponse();
+        response.setLayout(layout);
+        response.setSampledKeys(sampled.size());
+        response.setSampledUsers(users);
+        response.setSampledBytes(bytes);
+        response.setBytesPerUser(users == 0 ? 0.0 : (double) bytes / users);
+        return response;
+    }
+
+    private CachedTotalPoints migrateToBucket(String userId) {
+        String legacyValue = stringRedisTemplate.opsForValue().get(getKey(userId));
+        if (legacyValue == null) {
+            return null;
+        }
+        CachedTotalPoints cached = TotalPointsCodec.decode(legacyValue);
+        if (cached == null) {
+            cached = TotalPointsCodec.decodeLegacy(legacyValue, objectMapper);
+        }
+        if (cached != null) {
+            set(userId, cached);
+        }
+        stringRedisTemplate.delete(getKey(userId));
+        return cached;
+    }
+
+    private Long memoryUsage(RedisConnection connection, String key) {
+        Object result = connection.execute("MEMORY", bytes("USAGE"), bytes(key));
+        return result instanceof Number number ? number.longValue() : null;
+    }
+
+    // the scripts stamp expiries with the Redis clock; skew between the two only
+    // moves the end of an entry's life by that much
+    private long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private boolean isBucketed() {
+        return LAYOUT_BUCKETED.equals(layout);
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,127 @@
+package com.example.demo.controller;
+
+import com.example.demo.cache.RedisCacheLoadGuard;
+import com.example.demo.cache.UserTotalPointsNearCache;
+import com.example.demo.cache.UserTotalPointsRedis;
+import com.example.demo.controller.dto.CacheLoadStatsResponse;
+import com.example.demo.controller.dto.CacheMemoryReportResponse;
+import com.example.demo.controller.dto.CacheWarmupResponse;
+import com.example.demo.controller.dto.DeleteJobResponse;
+import com.example.demo.controller.dto.LeaderboardRebuildResponse;
+import com.example.demo.controller.dto.NearCacheStatsResponse;
+import com.example.demo.controller.dto.OutboxStatsResponse;
+import com.example.demo.controller.dto.ProducerStatsResponse;
+import com.example.demo.controller.dto.ReconcileJobResponse;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.mq.RocketMqProducer;
+import com.example.demo.service.CacheWarmupRunner;
+import com.example.demo.service.LeaderboardWindowRebuilder;
+import com.example.demo.service.PointsOutboxRelay;
+import com.example.demo.service.PointsReconcileRunner;
+import com.example.demo.service.PointsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+@RestController
+@RequestMapping("/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final UserTotalPointsNearCache userTotalPointsNearCache;
+    private final RedisCacheLoadGuard redisCacheLoadGuard;
+    private final UserTotalPointsRedis userTotalPointsRedis;
+    private final LeaderboardWindowRebuilder leaderboardWindowRebuilder;
+    private final PointsOutboxRelay pointsOutboxRelay;
+    private final RocketMqProducer rocketMqProducer;
+    private final PointsService pointsService;
+    private final CacheWarmupRunner cacheWarmupRunner;
+    private final PointsReconcileRunner pointsReconcileRunner;
+
+    @GetMapping("/cache/near")
+    public NearCacheStatsResponse getNearCacheStats() {
+        return userTotalPointsNearCache.stats();
+    }
+
+    @GetMapping("/cache/loads")
+    public CacheLoadStatsResponse getCacheLoadStats() {
+        return redisCacheLoadGuard.stats();
+    }
+
+    @GetMapping("/cache/memory")
+    public CacheMemoryReportResponse getCacheMemoryReport(
+            @RequestParam(defaultValue = "1000") int sample) {
+        return userTotalPointsRedis.memoryReport(Math.max(1, Math.min(sample, 10000)));
+    }
+
+    @GetMapping("/cache/warmup")
+    public CacheWarmupResponse getCacheWarmup() {
+        return cacheWarmupRunner.status();
+    }
+
+    // runs on the request thread; 409 when a warm-up is already running here or on another instance
+    @PostMapping("/cache/warmup")
+    public CacheWarmupResponse warmCache() {
+        if (!cacheWarmupRunner.warm("admin")) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "cache warm-up already running");
+        }
+        return cacheWarmupRunner.status();
+    }
+
+    @GetMapping("/outbox")
+    public OutboxStatsResponse getOutboxStats() {
+        return pointsOutboxRelay.stats();
+    }
+
+    @GetMapping("/mq/producer")
+    public ProducerStatsResponse getProducerStats() {
+        return rocketMqProducer.stats();
+    }
+
+    @GetMapping("/delete-jobs/{id}")
+    public DeleteJobResponse getDeleteJob(@PathVariable long id) {
+        return pointsService.getDeleteJob(id);
+    }
+
+    // report only unless repair=true; ranges defaults to demo.reconcile.ranges
+    @PostMapping("/reconcile")
+    public ReconcileJobResponse startReconcile(
+            @RequestParam(defaultValue = "false") boolean repair,
+            @RequestParam(required = false) Integer ranges) {
+        return pointsReconcileRunner.start(repair, ranges);
+    }
+
+    @GetMapping("/reconcile/{id}")
+    public ReconcileJobResponse getReconcileJob(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "100") int mismatches) {
+        return pointsReconcileRunner.status(id, Math.max(0, Math.min(mismatches, 1000)));
+    }
+
+    // date (UTC, yyyy-MM-dd) selects which window to rebuild; defaults to the current one
+    @PostMapping("/leaderboard/{window}/rebuild")
+    public LeaderboardRebuildResponse rebuildLeaderboardWindow(
+            @PathVariable String window,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        LeaderboardWindow resolved = LeaderboardWindow.from(window);
+        if (resolved == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "window must be one of daily, weekly, monthly");
+        }
+        Instant at = date == null ? Instant.now() : date.atStartOfDay(ZoneOffset.UTC).toInstant();
+        LeaderboardRebuildResponse response = new LeaderboardRebuildResponse();
+        response.setKey(resolved.key(at));
+        response.setEntries(leaderboardWindowRebuilder.rebuild(resolved, at));
+        return response;
+    }
+}
@@ -1,13 +1,19 @@
 package com.example.demo.controller;
 
 import com.example.demo.controller.dto.AddPointsRequest;
+import com.example.demo.controller.dto.BatchAddPointsResponse;
+import com.example.demo.controller.dto.DeleteJobResponse;
 import com.example.demo.controller.dto.LeaderboardEntry;
+import com.example.demo.controller.dto.PointHistoryResponse;
 import com.example.demo.controller.dto.PointResponse;
 import com.example.demo.controller.dto.TotalPointsResponse;
 import com.example.demo.controller.dto.UpdateReasonRequest;
 import com.example.demo.controller.dto.UpdateReasonResponse;
+import com.example.demo.controller.dto.UserRankResponse;
+import com.example.demo.service.PointsGroupCommitter;
 import com.example.demo.service.PointsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,8 +22,11 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -26,21 +35,60 @@ import java.util.List;
 public class PointsController {
 
     private final PointsService pointsService;
+    private final PointsGroupCommitter pointsGroupCommitter;
 
     @PostMapping
     public ResponseEntity<PointResponse> addPoints(@RequestBody AddPointsRequest request) {
-        PointResponse response = pointsService.addPoints(request);
+        PointResponse response = pointsGroupCommitter.isEnabled()
+                ? pointsGroupCommitter.addPoints(request)
+                : pointsService.addPoints(request);
         return ResponseEntity.status(201).body(response);
     }
 
+    @PostMapping("/batch")
+    public BatchAddPointsResponse addPointsBatch(@RequestBody List<AddPointsRequest> requests) {
+        return pointsService.addPointsBatch(requests);
+    }
+
+    @GetMapping("/totals")
+    public List<TotalPointsResponse> getTotals(@RequestParam List<String> userIds) {
+        return pointsService.getTotals(userIds);
+    }
+
     @GetMapping("/{userId}")
     public TotalPointsResponse getTotalPoints(@PathVariable String userId) {
         return pointsService.getTotalPoints(userId);
     }
 
     @GetMapping("/leaderboard")
-    public List<LeaderboardEntry> getLeaderboard() {
-        return pointsService.getLeaderboard();
+    public List<LeaderboardEntry> getLeaderboard(
+            @RequestParam(defaultValue = "all") String window,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "10") int limit) {
+        return pointsService.getLeaderboard(window, offset, limit);
+    }
+
+    @GetMapping("/{userId}/rank")
+    public UserRankResponse getRank(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "all") String window,
+            @RequestParam(defaultValue = "2") int neighbours) {
+        return pointsService.getRank(userId, window, neighbours);
+    }
+
+    @GetMapping("/{userId}/history")
+    public PointHistoryResponse getHistory(
+            @PathVariable String userId,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        return pointsService.getHistory(userId, cursor, limit);
+    }
+
+    @GetMapping("/{userId}/history/export")
+    public ResponseEntity<StreamingResponseBody> exportHistory(@PathVariable String userId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(pointsService.exportHistory(userId));
     }
 
     @PutMapping("/{id}")
@@ -49,8 +97,10 @@ public class PointsController {
     }
 
     @DeleteMapping("/{userId}")
-    public ResponseEntity<Void> deleteUserPoints(@PathVariable String userId) {
-        pointsService.deleteUserPoints(userId);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeleteJobResponse> deleteUserPoints(@PathVariable String userId) {
+        DeleteJobResponse job = pointsService.deleteUserPoints(userId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/admin/delete-jobs/" + job.getId()))
+                .body(job);
     }
 }
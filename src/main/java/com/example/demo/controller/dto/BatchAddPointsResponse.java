@@ -0,0 +1,12 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchAddPointsResponse {
+    private int accepted;
+    private int rejected;
+    private List<BatchItemResult> results;
+}
@@ -0,0 +1,15 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchItemResult {
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_REJECTED = "REJECTED";
+
+    private int index;
+    private String status;
+    private Long id;
+    private String userId;
+    private String error;
+}
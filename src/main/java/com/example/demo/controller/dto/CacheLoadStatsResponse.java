@@ -0,0 +1,13 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheLoadStatsResponse {
+    private long dbLoads;
+    private long coalescedWaits;
+    private long remoteWaits;
+    private long dbFallbacks;
+    private long dbFallbacksRejected;
+    private int inFlight;
+}
@@ -0,0 +1,12 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheMemoryReportResponse {
+    private String layout;
+    private int sampledKeys;
+    private long sampledUsers;
+    private long sampledBytes;
+    private double bytesPerUser;
+}
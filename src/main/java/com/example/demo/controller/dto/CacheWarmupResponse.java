@@ -0,0 +1,17 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class CacheWarmupResponse {
+    private String state;
+    private String trigger;
+    private long target;
+    private long warmed;
+    private double fraction;
+    private double rowsPerSecond;
+    private Instant startedAt;
+    private Instant finishedAt;
+}
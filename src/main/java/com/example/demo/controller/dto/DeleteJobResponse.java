@@ -0,0 +1,17 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class DeleteJobResponse {
+    private Long id;
+    private String userId;
+    private String status;
+    private long deletedRows;
+    private double rowsPerSecond;
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+}
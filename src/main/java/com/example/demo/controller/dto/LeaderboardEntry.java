@@ -4,6 +4,7 @@ import lombok.Data;
 
 @Data
 public class LeaderboardEntry {
+    private Long rank;
     private String userId;
     private Long total;
 }
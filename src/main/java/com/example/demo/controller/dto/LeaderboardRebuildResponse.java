@@ -0,0 +1,9 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class LeaderboardRebuildResponse {
+    private String key;
+    private long entries;
+}
@@ -0,0 +1,13 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class NearCacheStatsResponse {
+    private boolean enabled;
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private double hitRate;
+}
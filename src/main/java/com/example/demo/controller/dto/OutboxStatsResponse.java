@@ -0,0 +1,15 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class OutboxStatsResponse {
+    private long pending;
+    private long oldestPendingAgeMs;
+    private long sent;
+    private long failures;
+    private boolean leader;
+    private Instant lastSentAt;
+}
@@ -0,0 +1,13 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PointHistoryResponse {
+    private String userId;
+    private List<PointResponse> items;
+    // pass back as cursor for the next (older) page; null on the last page
+    private Long nextCursor;
+}
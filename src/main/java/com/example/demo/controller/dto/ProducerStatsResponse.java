@@ -0,0 +1,18 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class ProducerStatsResponse {
+    private String overflowPolicy;
+    private int buffered;
+    private int bufferCapacity;
+    private long sent;
+    private long failed;
+    private long dropped;
+    private long spilled;
+    private long replayed;
+    private Map<String, SendLatencyResponse> latency;
+}
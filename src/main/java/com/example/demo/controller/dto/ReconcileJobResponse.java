@@ -0,0 +1,23 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+public class ReconcileJobResponse {
+    private Long id;
+    private boolean repair;
+    private String status;
+    private int rangeCount;
+    private int rangesDone;
+    private long checkedUsers;
+    private long mismatchedUsers;
+    private long repairedUsers;
+    private double usersPerSecond;
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private List<ReconcileMismatchResponse> mismatches;
+}
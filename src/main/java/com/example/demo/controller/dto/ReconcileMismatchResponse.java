@@ -0,0 +1,12 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class ReconcileMismatchResponse {
+    private String userId;
+    private long ledgerTotal;
+    // null when the user had ledger rows but no user_points row
+    private Long storedTotal;
+    private boolean repaired;
+}
@@ -0,0 +1,12 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+@Data
+public class SendLatencyResponse {
+    private long count;
+    private long p50Ms;
+    private long p95Ms;
+    private long p99Ms;
+    private long maxMs;
+}
@@ -0,0 +1,13 @@
+package com.example.demo.controller.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class UserRankResponse {
+    private String userId;
+    private Long rank;
+    private Long total;
+    private List<LeaderboardEntry> neighbours;
+}
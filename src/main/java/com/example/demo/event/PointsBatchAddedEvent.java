@@ -0,0 +1,6 @@
+package com.example.demo.event;
+
+import java.util.List;
+
+public record PointsBatchAddedEvent(List<PointsChangedEvent> changes) {
+}
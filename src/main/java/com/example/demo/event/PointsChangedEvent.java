@@ -4,5 +4,7 @@ public record PointsChangedEvent(
         String userId,
         Long pointId,
         Long amount,
-        String reason) {
+        String reason,
+        Long total,
+        Long version) {
 }
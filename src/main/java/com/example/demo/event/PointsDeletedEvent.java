@@ -1,4 +1,5 @@
 package com.example.demo.event;
 
-public record PointsDeletedEvent(String userId) {
+// version is the tombstone's, null when the user had no user_points row
+public record PointsDeletedEvent(String userId, Long version) {
 }
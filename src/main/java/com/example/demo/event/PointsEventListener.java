@@ -1,74 +1,98 @@
 package com.example.demo.event;
 
 import com.example.demo.cache.LeaderboardRedis;
-import com.example.demo.cache.RedisCacheLoadGuard;
+import com.example.demo.cache.PointHistoryRedis;
+import com.example.demo.cache.UserTotalPointsNearCache;
 import com.example.demo.cache.UserTotalPointsRedis;
-import com.example.demo.mq.RocketMqProducer;
-import com.example.demo.mq.event.UserPointsEvent;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.model.points.cache.CachedTotalPoints;
 import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
-import org.springframework.web.server.ResponseStatusException;
-import org.springframework.http.HttpStatus;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class PointsEventListener {
 
+    private static final String WRITE_MODE_INVALIDATE = "invalidate";
+
     private final UserTotalPointsRedis userTotalPointsRedis;
-    private final RedisCacheLoadGuard redisCacheLoadGuard;
+    private final UserTotalPointsNearCache userTotalPointsNearCache;
     private final LeaderboardRedis leaderboardRedis;
-    private final RocketMqProducer rocketMqProducer;
-    private final ObjectMapper objectMapper;
-
-    @Value("${demo.mq.user-points-topic}")
-    private String userPointsTopic;
-
-    @Value("${demo.cache.load-lock-ttl-ms:3000}")
-    private long loadLockTtlMs;
+    private final PointHistoryRedis pointHistoryRedis;
 
-    @Value("${demo.cache.load-lock-retry:3}")
-    private int loadLockRetry;
+    @Value("${demo.cache.total-write-mode:write-through}")
+    private String totalWriteMode;
 
-    @Value("${demo.cache.load-lock-sleep-ms:50}")
-    private long loadLockSleepMs;
+    // with the projection consumer on, these side effects are applied from user-points-topic instead
+    @Value("${demo.mq.projection.enabled:false}")
+    private boolean projectionEnabled;
 
+    // RocketMQ publication goes through the outbox, see PointsOutboxWriter.
+    // The handlers run on the committing thread, right after its commit. On a shared executor
+    // a user's delete could overtake their last add, and the leaderboard would keep the removed user.
+    // An exception here is logged by the transaction manager; the request has already committed.
     @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
     public void onPointsChanged(PointsChangedEvent event) {
-        deleteTotalWithLock(event.userId());
-        try {
-            UserPointsEvent payload = new UserPointsEvent();
-            payload.setUserId(event.userId());
-            payload.setAmount(event.amount());
-            payload.setReason(event.reason());
-            payload.setPointId(event.pointId());
-            payload.setCreatedAt(Instant.now());
-            String json = objectMapper.writeValueAsString(payload);
-            rocketMqProducer.send(userPointsTopic, json);
-        } catch (Exception ex) {
-            log.warn("[PointsEventListener][onPointsChanged] error", ex);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "failed to publish event");
+        if (projectionEnabled) {
+            return;
+        }
+        updateTotals(List.of(event));
+        updateLeaderboard(List.of(event));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPointsBatchAdded(PointsBatchAddedEvent event) {
+        if (projectionEnabled) {
+            return;
         }
+        updateTotals(event.changes());
+        updateLeaderboard(event.changes());
     }
 
     @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
     public void onPointsDeleted(PointsDeletedEvent event) {
-        deleteTotalWithLock(event.userId());
-        leaderboardRedis.removeUser(event.userId());
+        if (projectionEnabled) {
+            return;
+        }
+        if (event.version() != null) {
+            // a value, not a DEL, so a cache fill that read the row before the delete loses to it
+            userTotalPointsRedis.set(event.userId(), new CachedTotalPoints(0L, event.version()));
+        } else {
+            userTotalPointsRedis.deleteTotal(event.userId());
+        }
+        userTotalPointsNearCache.invalidate(List.of(event.userId()));
+        leaderboardRedis.removeUser(event.userId(), Instant.now());
+        pointHistoryRedis.invalidate(List.of(event.userId()));
     }
 
-    private void deleteTotalWithLock(String userId) {
-        redisCacheLoadGuard.withLock(
-                userTotalPointsRedis.getKey(userId),
-                loadLockRetry,
-                loadLockTtlMs,
-                loadLockSleepMs,
-                () -> userTotalPointsRedis.deleteTotal(userId));
+    private void updateTotals(List<PointsChangedEvent> changes) {
+        Set<String> userIds = new LinkedHashSet<>();
+        for (PointsChangedEvent change : changes) {
+            userIds.add(change.userId());
+        }
+        if (WRITE_MODE_INVALIDATE.equals(totalWriteMode)) {
+            userTotalPointsRedis.deleteTotals(userIds);
+        } else {
+            userTotalPointsRedis.applyCommitted(changes);
+        }
+        userTotalPointsNearCache.invalidate(userIds);
+        pointHistoryRedis.invalidate(userIds);
+    }
+
+    private void updateLeaderboard(List<PointsChangedEvent> changes) {
+        try {
+            leaderboardRedis.applyChanges(changes, Instant.now());
+        } catch (Exception ex) {
+            // the scheduler's reconciliation pass repairs the board
+            log.warn("[PointsEventListener][updateLeaderboard] error size={}", changes.size(), ex);
+        }
     }
 }
@@ -0,0 +1,82 @@
+package com.example.demo.event;
+
+import com.example.demo.mq.event.UserPointsEvent;
+import com.example.demo.repository.PointsOutboxRepository;
+import com.example.demo.repository.PointsOutboxRepository.OutboxMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// runs inside the write transaction, so the outbox rows commit or roll back with the points
+@Component
+@RequiredArgsConstructor
+public class PointsOutboxWriter {
+
+    private final PointsOutboxRepository pointsOutboxRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${demo.mq.user-points-topic}")
+    private String userPointsTopic;
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onPointsChanged(PointsChangedEvent event) {
+        write(List.of(event));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onPointsBatchAdded(PointsBatchAddedEvent event) {
+        write(event.changes());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onPointsDeleted(PointsDeletedEvent event) {
+        UserPointsEvent payload = new UserPointsEvent();
+        payload.setType(UserPointsEvent.TYPE_DELETED);
+        payload.setUserId(event.userId());
+        if (event.version() != null) {
+            payload.setTotal(0L);
+            payload.setVersion(event.version());
+        }
+        payload.setCreatedAt(Instant.now());
+        pointsOutboxRepository.insertAll(List.of(toMessage(payload)));
+    }
+
+    private void write(List<PointsChangedEvent> changes) {
+        Instant now = Instant.now();
+        List<OutboxMessage> messages = new ArrayList<>(changes.size());
+        for (PointsChangedEvent change : changes) {
+            messages.add(toMessage(toPayload(change, now)));
+        }
+        pointsOutboxRepository.insertAll(messages);
+    }
+
+    // keyed by userId so that one user's events land on one ordered queue
+    private OutboxMessage toMessage(UserPointsEvent payload) {
+        try {
+            return new OutboxMessage(
+                    null, userPointsTopic, payload.getUserId(), objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("failed to serialize points event", ex);
+        }
+    }
+
+    private UserPointsEvent toPayload(PointsChangedEvent event, Instant createdAt) {
+        UserPointsEvent payload = new UserPointsEvent();
+        payload.setType(UserPointsEvent.TYPE_ADDED);
+        payload.setUserId(event.userId());
+        payload.setAmount(event.amount());
+        payload.setReason(event.reason());
+        payload.setPointId(event.pointId());
+        payload.setTotal(event.total());
+        payload.setVersion(event.version());
+        payload.setCreatedAt(createdAt);
+        return payload;
+    }
+}
@@ -1,4 +1,4 @@
 package com.example.demo.model.points.cache;
 
-public record CachedTotalPoints(long total) {
+public record CachedTotalPoints(long total, long version) {
 }
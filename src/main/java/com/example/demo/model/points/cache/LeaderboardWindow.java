@@ -0,0 +1,73 @@
+package com.example.demo.model.points.cache;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+public enum LeaderboardWindow {
+    DAILY(Duration.ofDays(2)),
+    WEEKLY(Duration.ofDays(14)),
+    MONTHLY(Duration.ofDays(62));
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    // long enough to still serve the previous window after it closes
+    private final Duration ttl;
+
+    LeaderboardWindow(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public static LeaderboardWindow from(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public String key(Instant at) {
+        LocalDate start = start(at);
+        String suffix = switch (this) {
+            case DAILY -> DAY.format(start);
+            case WEEKLY -> String.format("%d-W%02d",
+                    start.get(IsoFields.WEEK_BASED_YEAR), start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTHLY -> MONTH.format(start);
+        };
+        return RedisKeys.LEADERBOARD_KEY + ":" + name().toLowerCase(Locale.ROOT) + ":" + suffix;
+    }
+
+    public Instant startInstant(Instant at) {
+        return start(at).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public Instant endInstant(Instant at) {
+        LocalDate start = start(at);
+        LocalDate end = switch (this) {
+            case DAILY -> start.plusDays(1);
+            case WEEKLY -> start.plusWeeks(1);
+            case MONTHLY -> start.plusMonths(1);
+        };
+        return end.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private LocalDate start(Instant at) {
+        LocalDate day = LocalDate.ofInstant(at, ZoneOffset.UTC);
+        return switch (this) {
+            case DAILY -> day;
+            case WEEKLY -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTHLY -> day.withDayOfMonth(1);
+        };
+    }
+}
@@ -2,7 +2,20 @@ package com.example.demo.model.points.cache;
 
 public final class RedisKeys {
     public static final String LEADERBOARD_KEY = "points:leaderboard";
+    public static final String LEADERBOARD_STAGING_SUFFIX = ":staging:";
+    public static final String LEADERBOARD_REBUILD_SUFFIX = ":rebuild";
+    public static final String LEADERBOARD_VERSION_KEY = "points:leaderboard:version";
+    public static final String PROJECTION_APPLIED = "points:projection:applied:";
     public static final String USER_TOTAL_POINTS = "points:total:";
+    public static final String USER_TOTAL_POINTS_BUCKET = "points:totals:";
+    public static final String USER_POINT_HISTORY = "points:history:";
+    public static final String TOTAL_INVALIDATION_CHANNEL = "points:total:invalidate";
+    public static final String CACHE_LOADED_CHANNEL = "points:cache:loaded";
+    public static final String SCHEDULER_LEASE = "points:lease:";
+    public static final String CACHE_WARM_MARKER = "points:cache:warm";
+    public static final String BLOOM_USERS_KEY = "points:bloom:users";
+    public static final String BLOOM_STAGING_SUFFIX = ":staging:";
+    public static final String BLOOM_ADDED_CHANNEL = "points:bloom:added";
 
     private RedisKeys() {
     }
@@ -2,12 +2,18 @@ package com.example.demo.model.points.entity;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
 
@@ -16,13 +22,14 @@ import java.time.Instant;
 @Table(
     name = "points",
     indexes = {
-        @Index(name = "idx_points_user_id", columnList = "user_id")
+        @Index(name = "idx_points_user_id_id_amount", columnList = "user_id, id, amount"),
+        @Index(name = "idx_points_created_at", columnList = "created_at")
     }
 )
-public class PointRecord {
+public class PointRecord implements Persistable<Long> {
 
+    // assigned by PointIdGenerator before save, so the insert can wait for a batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(name = "user_id", nullable = false, length = 64)
@@ -34,6 +41,28 @@ public class PointRecord {
     @Column(nullable = false, length = 255)
     private String reason;
 
+    // user_points.version after this row's update; delete jobs remove rows up to a version
+    @Column(name = "user_version", nullable = false)
+    private Long userVersion;
+
     @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
     private Instant createdAt;
+
+    // an assigned id would otherwise make save() merge, with a SELECT first
+    @Transient
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean newRecord = true;
+
+    @Override
+    public boolean isNew() {
+        return newRecord;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newRecord = false;
+    }
 }
@@ -3,6 +3,7 @@ package com.example.demo.model.points.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 
@@ -10,7 +11,12 @@ import java.time.Instant;
 
 @Data
 @Entity
-@Table(name = "user_points")
+@Table(
+    name = "user_points",
+    indexes = {
+        @Index(name = "idx_user_points_total_points", columnList = "total_points")
+    }
+)
 public class UserPoints {
 
     @Id
@@ -20,6 +26,12 @@ public class UserPoints {
     @Column(name = "total_points", nullable = false)
     private Long totalPoints;
 
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "deleted", nullable = false)
+    private Boolean deleted;
+
     @Column(name = "updated_at", nullable = false, insertable = false, updatable = false)
     private Instant updatedAt;
 }
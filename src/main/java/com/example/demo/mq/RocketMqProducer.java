@@ -1,26 +1,115 @@
 package com.example.demo.mq;
 
+import com.example.demo.controller.dto.ProducerStatsResponse;
+import com.example.demo.controller.dto.SendLatencyResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class RocketMqProducer {
 
+    // stay well below the broker's 4 MiB maxMessageSize once properties are added
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+    private static final long IDLE_POLL_MS = 100;
+    private static final long REPLAY_RETRY_MS = 5000;
+    private static final long QUEUE_REFRESH_MS = 30000;
+    private static final String SPILL_FILE = "spill.log";
+    private static final String REPLAY_FILE = "spill.replay";
+
+    public enum OverflowPolicy {
+        BLOCK, DROP, SPILL
+    }
+
     private final String nameServer;
     private final String group;
+    private final int bufferCapacity;
+    private final int maxBatchMessages;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+    private final int retries;
+    private final Path spillDir;
+    private final MeterRegistry meterRegistry;
     private DefaultMQProducer producer;
 
+    private BlockingQueue<PendingMessage> buffer;
+    private Thread dispatcher;
+    private volatile boolean running;
+    private long replayRetryAt;
+
+    // a ReentrantLock rather than synchronized: the spill write is file I/O on caller threads,
+    // which would pin the carrier when the caller is a virtual thread
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private final Map<String, SendLatencyHistogram> latency = new ConcurrentHashMap<>();
+    private final Map<String, TopicQueues> topicQueues = new ConcurrentHashMap<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
     public RocketMqProducer(
             @Value("${rocketmq.name-server}") String nameServer,
-            @Value("${rocketmq.producer.group}") String group) {
+            @Value("${rocketmq.producer.group}") String group,
+            @Value("${demo.mq.async.buffer-capacity:10000}") int bufferCapacity,
+            @Value("${demo.mq.async.max-batch-messages:256}") int maxBatchMessages,
+            @Value("${demo.mq.async.overflow-policy:block}") String overflowPolicy,
+            @Value("${demo.mq.async.block-timeout-ms:1000}") long blockTimeoutMs,
+            @Value("${demo.mq.async.retries:2}") int retries,
+            @Value("${demo.mq.async.spill-dir:${java.io.tmpdir}/points-mq-spill}") String spillDir,
+            MeterRegistry meterRegistry) {
         this.nameServer = nameServer;
         this.group = group;
+        this.bufferCapacity = bufferCapacity;
+        this.maxBatchMessages = maxBatchMessages;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.toUpperCase(Locale.ROOT));
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.retries = retries;
+        this.spillDir = Path.of(spillDir);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("points.mq.buffer.size", () -> buffer == null ? 0 : buffer.size())
+                .register(meterRegistry);
+        registerOutcome("sent", sent);
+        registerOutcome("failed", failed);
+        registerOutcome("dropped", dropped);
+        registerOutcome("spilled", spilled);
+        registerOutcome("replayed", replayed);
     }
 
     @PostConstruct
@@ -28,18 +117,317 @@ public class RocketMqProducer {
         producer = new DefaultMQProducer(group);
         producer.setNamesrvAddr(nameServer);
         producer.setVipChannelEnabled(false);
+        producer.setRetryTimesWhenSendAsyncFailed(retries);
         producer.start();
+
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        running = true;
+        dispatcher = Thread.ofPlatform()
+                .name("rocketmq-dispatcher")
+                .daemon(true)
+                .start(this::runDispatcher);
     }
 
     @PreDestroy
-    public void shutdown() {
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        }
         if (producer != null) {
             producer.shutdown();
         }
     }
 
-    public SendResult send(String topic, String payload) throws Exception {
-        Message message = new Message(topic, payload.getBytes());
-        return producer.send(message);
+    // buffered and coalesced with other messages of the same topic into batch sends;
+    // messages with a key always go to the queue the key hashes to, so a key's messages stay in order.
+    // a spilled message completes with null once it is on disk
+    public CompletableFuture<SendResult> sendAsync(String topic, String key, String payload) {
+        Message message = new Message(topic, payload.getBytes(StandardCharsets.UTF_8));
+        if (key != null) {
+            message.setKeys(key);
+        }
+        PendingMessage pending = new PendingMessage(message, new CompletableFuture<>(), System.nanoTime());
+        if (running && buffer.offer(pending)) {
+            return pending.future();
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    if (running && buffer.offer(pending, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return pending.future();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case SPILL -> {
+                try {
+                    spill(pending.message());
+                    spilled.incrementAndGet();
+                    pending.future().complete(null);
+                    return pending.future();
+                } catch (IOException ex) {
+                    log.warn("[RocketMqProducer][sendAsync] spill failed topic={}", topic, ex);
+                }
+            }
+            case DROP -> {
+            }
+        }
+        dropped.incrementAndGet();
+        pending.future().completeExceptionally(
+                new RejectedExecutionException("producer buffer is full topic=" + topic));
+        return pending.future();
+    }
+
+    public ProducerStatsResponse stats() {
+        Map<String, SendLatencyResponse> histograms = new TreeMap<>();
+        latency.forEach((topic, histogram) -> histograms.put(topic, histogram.snapshot()));
+        ProducerStatsResponse response = new ProducerStatsResponse();
+        response.setOverflowPolicy(overflowPolicy.name().toLowerCase(Locale.ROOT));
+        response.setBuffered(buffer == null ? 0 : buffer.size());
+        response.setBufferCapacity(bufferCapacity);
+        response.setSent(sent.get());
+        response.setFailed(failed.get());
+        response.setDropped(dropped.get());
+        response.setSpilled(spilled.get());
+        response.setReplayed(replayed.get());
+        response.setLatency(histograms);
+        return response;
+    }
+
+    private void runDispatcher() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchMessages);
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingMessage first = running ? buffer.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS) : buffer.poll();
+                if (first == null) {
+                    if (running) {
+                        replaySpill();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, maxBatchMessages - 1);
+            } catch (InterruptedException ex) {
+                // shutdown: dispatch what was collected, then drain the rest of the buffer
+            }
+            dispatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void dispatch(List<PendingMessage> pending) {
+        Map<String, List<PendingMessage>> byTopic = new LinkedHashMap<>();
+        for (PendingMessage message : pending) {
+            byTopic.computeIfAbsent(message.message().getTopic(), topic -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<String, List<PendingMessage>> entry : byTopic.entrySet()) {
+            String topic = entry.getKey();
+            Map<MessageQueue, List<PendingMessage>> byQueue = new LinkedHashMap<>();
+            List<PendingMessage> unkeyed = new ArrayList<>();
+            try {
+                for (PendingMessage message : entry.getValue()) {
+                    String key = message.message().getKeys();
+                    if (key == null) {
+                        unkeyed.add(message);
+                    } else {
+                        byQueue.computeIfAbsent(selectQueue(topic, key), queue -> new ArrayList<>()).add(message);
+                    }
+                }
+            } catch (Exception ex) {
+                fail(topic, entry.getValue(), ex);
+                continue;
+            }
+            byQueue.forEach((queue, messages) -> sendChunks(topic, queue, messages));
+            sendChunks(topic, null, unkeyed);
+        }
+    }
+
+    private void sendChunks(String topic, MessageQueue queue, List<PendingMessage> messages) {
+        List<PendingMessage> chunk = new ArrayList<>();
+        int chunkBytes = 0;
+        for (PendingMessage message : messages) {
+            int size = message.message().getBody().length;
+            if (!chunk.isEmpty() && chunkBytes + size > MAX_BATCH_BYTES) {
+                sendChunk(topic, queue, chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(message);
+            chunkBytes += size;
+        }
+        if (!chunk.isEmpty()) {
+            sendChunk(topic, queue, chunk);
+        }
+    }
+
+    private MessageQueue selectQueue(String topic, String key) throws MQClientException {
+        long now = System.currentTimeMillis();
+        TopicQueues cached = topicQueues.get(topic);
+        if (cached == null || cached.expiresAt() < now) {
+            List<MessageQueue> queues = new ArrayList<>(producer.fetchPublishMessageQueues(topic));
+            if (queues.isEmpty()) {
+                throw new MQClientException("no message queues for topic " + topic, null);
+            }
+            // a stable order so every producer maps a key to the same queue
+            Collections.sort(queues);
+            cached = new TopicQueues(queues, now + QUEUE_REFRESH_MS);
+            topicQueues.put(topic, cached);
+        }
+        return cached.queues().get(Math.floorMod(key.hashCode(), cached.queues().size()));
+    }
+
+    private void sendChunk(String topic, MessageQueue queue, List<PendingMessage> chunk) {
+        List<Message> messages = new ArrayList<>(chunk.size());
+        for (PendingMessage message : chunk) {
+            messages.add(message.message());
+        }
+        SendLatencyHistogram histogram = latency.computeIfAbsent(topic, key -> new SendLatencyHistogram());
+        Timer timer = sendTimer(topic, "success");
+        try {
+            SendCallback callback = new SendCallback() {
+                @Override
+                public void onSuccess(SendResult result) {
+                    long now = System.nanoTime();
+                    for (PendingMessage message : chunk) {
+                        histogram.record(TimeUnit.NANOSECONDS.toMillis(now - message.enqueuedAt()));
+                        timer.record(now - message.enqueuedAt(), TimeUnit.NANOSECONDS);
+                        message.future().complete(result);
+                    }
+                    sent.addAndGet(chunk.size());
+                }
+
+                @Override
+                public void onException(Throwable ex) {
+                    fail(topic, chunk, ex);
+                }
+            };
+            if (queue == null) {
+                producer.send(messages, callback);
+            } else {
+                producer.send(messages, queue, callback);
+            }
+        } catch (Exception ex) {
+            fail(topic, chunk, ex);
+        }
+    }
+
+    private void fail(String topic, List<PendingMessage> chunk, Throwable ex) {
+        log.warn("[RocketMqProducer][sendChunk] batch send failed topic={} size={}", topic, chunk.size(), ex);
+        failed.addAndGet(chunk.size());
+        Timer timer = sendTimer(topic, "failure");
+        long now = System.nanoTime();
+        for (PendingMessage message : chunk) {
+            timer.record(now - message.enqueuedAt(), TimeUnit.NANOSECONDS);
+            message.future().completeExceptionally(ex);
+        }
+    }
+
+    // enqueue to broker acknowledgement, so buffering time is included
+    private Timer sendTimer(String topic, String outcome) {
+        return Timer.builder("points.mq.send")
+                .tag("topic", topic)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private void registerOutcome(String outcome, AtomicLong counter) {
+        FunctionCounter.builder("points.mq.messages", counter, AtomicLong::get)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private void sendMessages(List<Message> messages) throws Exception {
+        List<Message> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (Message message : messages) {
+            int size = message.getBody().length;
+            if (!batch.isEmpty() && (batchBytes + size > MAX_BATCH_BYTES
+                    || !batch.get(0).getTopic().equals(message.getTopic()))) {
+                producer.send(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(message);
+            batchBytes += size;
+        }
+        if (!batch.isEmpty()) {
+            producer.send(batch);
+        }
+    }
+
+    // one "topic<TAB>key<TAB>base64(body)" line per message
+    private void spill(Message message) throws IOException {
+        String key = message.getKeys() == null ? "" : message.getKeys();
+        String line = message.getTopic() + '\t' + key + '\t'
+                + Base64.getEncoder().encodeToString(message.getBody()) + '\n';
+        spillLock.lock();
+        try {
+            Files.createDirectories(spillDir);
+            Files.writeString(spillDir.resolve(SPILL_FILE), line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    // runs only while the buffer is idle; a failed replay keeps the file and is retried
+    // from the start, so spilled messages are delivered at least once but not in key order
+    private void replaySpill() {
+        if (System.currentTimeMillis() < replayRetryAt) {
+            return;
+        }
+        Path replay = spillDir.resolve(REPLAY_FILE);
+        try {
+            spillLock.lock();
+            try {
+                Path spill = spillDir.resolve(SPILL_FILE);
+                if (!Files.exists(replay)) {
+                    if (!Files.exists(spill)) {
+                        return;
+                    }
+                    Files.move(spill, replay, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } finally {
+                spillLock.unlock();
+            }
+            long count = 0;
+            List<Message> messages = new ArrayList<>(maxBatchMessages);
+            try (BufferedReader reader = Files.newBufferedReader(replay, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length < 3) {
+                        continue;
+                    }
+                    Message message = new Message(fields[0], Base64.getDecoder().decode(fields[2]));
+                    if (!fields[1].isEmpty()) {
+                        message.setKeys(fields[1]);
+                    }
+                    messages.add(message);
+                    if (messages.size() >= maxBatchMessages) {
+                        sendMessages(messages);
+                        count += messages.size();
+                        messages.clear();
+                    }
+                }
+            }
+            sendMessages(messages);
+            count += messages.size();
+            Files.delete(replay);
+            replayed.addAndGet(count);
+            log.info("[RocketMqProducer][replaySpill] replayed={}", count);
+        } catch (Exception ex) {
+            replayRetryAt = System.currentTimeMillis() + REPLAY_RETRY_MS;
+            log.warn("[RocketMqProducer][replaySpill] replay failed", ex);
+        }
+    }
+
+    private record TopicQueues(List<MessageQueue> queues, long expiresAt) {
+    }
+
+    private record PendingMessage(Message message, CompletableFuture<SendResult> future, long enqueuedAt) {
     }
 }
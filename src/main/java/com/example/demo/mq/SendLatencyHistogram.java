@@ -0,0 +1,54 @@
+package com.example.demo.mq;
+
+import com.example.demo.controller.dto.SendLatencyResponse;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// fixed millisecond buckets; percentiles report the upper bound of the bucket they fall in
+class SendLatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MS.length && millis > BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        max.accumulateAndGet(millis, Math::max);
+    }
+
+    SendLatencyResponse snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        SendLatencyResponse response = new SendLatencyResponse();
+        response.setCount(total);
+        response.setP50Ms(percentile(snapshot, total, 0.50));
+        response.setP95Ms(percentile(snapshot, total, 0.95));
+        response.setP99Ms(percentile(snapshot, total, 0.99));
+        response.setMaxMs(max.get());
+        return response;
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return i < BOUNDS_MS.length ? Math.min(BOUNDS_MS[i], max.get()) : max.get();
+            }
+        }
+        return max.get();
+    }
+}
@@ -27,10 +27,16 @@ public class UserPointsPrintConsumer {
     @Value("${demo.mq.print-consumer-group:points-print-consumer}")
     private String consumerGroup;
 
+    @Value("${demo.mq.print-consumer-enabled:true}")
+    private boolean enabled;
+
     private DefaultMQPushConsumer consumer;
 
     @PostConstruct
     public void start() throws MQClientException {
+        if (!enabled) {
+            return;
+        }
         consumer = new DefaultMQPushConsumer(consumerGroup);
         consumer.setNamesrvAddr(nameServer);
         consumer.subscribe(userPointsTopic, "*");
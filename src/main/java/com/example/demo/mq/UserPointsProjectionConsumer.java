@@ -0,0 +1,88 @@
+package com.example.demo.mq;
+
+import com.example.demo.mq.event.UserPointsEvent;
+import com.example.demo.service.PointsProjection;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserPointsProjectionConsumer {
+
+    private final PointsProjection pointsProjection;
+    private final ObjectMapper objectMapper;
+
+    @Value("${rocketmq.name-server}")
+    private String nameServer;
+
+    @Value("${demo.mq.user-points-topic}")
+    private String userPointsTopic;
+
+    @Value("${demo.mq.projection.enabled:false}")
+    private boolean enabled;
+
+    @Value("${demo.mq.projection.consumer-group:points-projection-consumer}")
+    private String consumerGroup;
+
+    @Value("${demo.mq.projection.batch-size:256}")
+    private int batchSize;
+
+    private DefaultMQPushConsumer consumer;
+
+    @PostConstruct
+    public void start() throws MQClientException {
+        if (!enabled) {
+            return;
+        }
+        consumer = new DefaultMQPushConsumer(consumerGroup);
+        consumer.setNamesrvAddr(nameServer);
+        consumer.setConsumeMessageBatchMaxSize(batchSize);
+        consumer.setPullBatchSize(batchSize);
+        consumer.subscribe(userPointsTopic, "*");
+        // one batch per queue at a time, and a user's events always share a queue
+        consumer.registerMessageListener(new MessageListenerOrderly() {
+            @Override
+            public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                List<UserPointsEvent> events = new ArrayList<>(msgs.size());
+                for (MessageExt msg : msgs) {
+                    try {
+                        events.add(objectMapper.readValue(msg.getBody(), UserPointsEvent.class));
+                    } catch (IOException ex) {
+                        log.warn("[UserPointsProjectionConsumer] skipping unreadable msgId={}", msg.getMsgId(), ex);
+                    }
+                }
+                try {
+                    pointsProjection.apply(events);
+                    return ConsumeOrderlyStatus.SUCCESS;
+                } catch (Exception ex) {
+                    log.warn("[UserPointsProjectionConsumer] projection failed size={}", msgs.size(), ex);
+                    return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                }
+            }
+        });
+        consumer.start();
+        log.info("[UserPointsProjectionConsumer] started group={} batchSize={}", consumerGroup, batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (consumer != null) {
+            consumer.shutdown();
+        }
+    }
+}
@@ -6,9 +6,16 @@ import java.time.Instant;
 
 @Data
 public class UserPointsEvent {
+    public static final String TYPE_ADDED = "ADDED";
+    public static final String TYPE_DELETED = "DELETED";
+
+    private String type;
     private String userId;
     private Long amount;
     private String reason;
     private Long pointId;
+    // user total and version right after this point was committed
+    private Long total;
+    private Long version;
     private Instant createdAt;
 }
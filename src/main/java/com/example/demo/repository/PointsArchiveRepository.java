@@ -0,0 +1,132 @@
+package com.example.demo.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class PointsArchiveRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // newest row old enough to archive; one step backwards on idx_points_created_at
+    public Long findCutoffId(Instant createdBefore) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM points WHERE created_at < ? ORDER BY created_at DESC, id DESC LIMIT 1",
+                Long.class,
+                Timestamp.from(createdBefore));
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    public boolean isArchived(long id) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM points_archive WHERE id = ?", Integer.class, id).isEmpty();
+    }
+
+    // Moves the oldest `limit` rows with id <= cutoffId to points_archive and adds them to
+    // the users' archived totals, in one transaction: a reader sees each row in exactly one
+    // table and the snapshot always matches the archive. Returns the number of rows moved.
+    @Transactional
+    public int archiveChunk(long cutoffId, int limit) {
+        List<ArchivedRow> rows = jdbcTemplate.query(
+                "SELECT id, user_id, amount, reason, user_version, created_at FROM points"
+                        + " WHERE id <= ? ORDER BY id LIMIT ? FOR UPDATE",
+                (rs, rowNum) -> new ArchivedRow(
+                        rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4), rs.getLong(5),
+                        rs.getTimestamp(6)),
+                cutoffId,
+                limit);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        StringBuilder insert = new StringBuilder(
+                "INSERT INTO points_archive (id, user_id, amount, reason, user_version, created_at) VALUES ");
+        Object[] insertArgs = new Object[rows.size() * 6];
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ArchivedRow row = rows.get(i);
+            if (i > 0) {
+                insert.append(',');
+            }
+            insert.append("(?, ?, ?, ?, ?, ?)");
+            insertArgs[i * 6] = row.id();
+            insertArgs[i * 6 + 1] = row.userId();
+            insertArgs[i * 6 + 2] = row.amount();
+            insertArgs[i * 6 + 3] = row.reason();
+            insertArgs[i * 6 + 4] = row.userVersion();
+            insertArgs[i * 6 + 5] = row.createdAt();
+            long[] total = totals.computeIfAbsent(row.userId(), k -> new long[2]);
+            total[0] += row.amount();
+            total[1]++;
+        }
+        jdbcTemplate.update(insert.toString(), insertArgs);
+
+        StringBuilder snapshot = new StringBuilder(
+                "INSERT INTO points_archive_users (user_id, archived_total, archived_count) VALUES ");
+        List<Object> snapshotArgs = new ArrayList<>(totals.size() * 3);
+        for (Map.Entry<String, long[]> total : totals.entrySet()) {
+            snapshot.append(snapshotArgs.isEmpty() ? "(?, ?, ?)" : ",(?, ?, ?)");
+            snapshotArgs.add(total.getKey());
+            snapshotArgs.add(total.getValue()[0]);
+            snapshotArgs.add(total.getValue()[1]);
+        }
+        snapshot.append(" ON DUPLICATE KEY UPDATE archived_total = archived_total + VALUES(archived_total),"
+                + " archived_count = archived_count + VALUES(archived_count)");
+        jdbcTemplate.update(snapshot.toString(), snapshotArgs.toArray());
+
+        // the locked rows are exactly this primary key range: ids are never reused below it
+        jdbcTemplate.update(
+                "DELETE FROM points WHERE id >= ? AND id <= ?",
+                rows.get(0).id(),
+                rows.get(rows.size() - 1).id());
+        return rows.size();
+    }
+
+    // for delete jobs: removes archived rows up to fenceVersion and takes them off the snapshot
+    @Transactional
+    public int deleteArchivedChunk(String userId, long fenceVersion, int limit) {
+        long[] removed = new long[2];
+        List<Long> ids = new ArrayList<>();
+        jdbcTemplate.query(
+                "SELECT id, amount FROM points_archive WHERE user_id = ? AND user_version <= ?"
+                        + " ORDER BY id LIMIT ? FOR UPDATE",
+                rs -> {
+                    ids.add(rs.getLong(1));
+                    removed[0] += rs.getLong(2);
+                    removed[1]++;
+                },
+                userId,
+                fenceVersion,
+                limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // the id range can hold rows from after the fence too
+        jdbcTemplate.update(
+                "DELETE FROM points_archive WHERE user_id = ? AND id >= ? AND id <= ? AND user_version <= ?",
+                userId,
+                ids.get(0),
+                ids.get(ids.size() - 1),
+                fenceVersion);
+        jdbcTemplate.update(
+                "UPDATE points_archive_users SET archived_total = archived_total - ?,"
+                        + " archived_count = archived_count - ? WHERE user_id = ?",
+                removed[0],
+                removed[1],
+                userId);
+        jdbcTemplate.update("DELETE FROM points_archive_users WHERE user_id = ? AND archived_count = 0", userId);
+        return ids.size();
+    }
+
+    private record ArchivedRow(
+            long id, String userId, long amount, String reason, long userVersion, Timestamp createdAt) {
+    }
+}
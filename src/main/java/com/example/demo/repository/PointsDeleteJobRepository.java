@@ -0,0 +1,119 @@
+package com.example.demo.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class PointsDeleteJobRepository {
+
+    public static final String STATUS_PENDING = "PENDING";
+
+    private static final String JOB_COLUMNS =
+            "SELECT id, user_id, fence_version, status, deleted_rows, created_at, started_at, finished_at"
+                    + " FROM points_delete_jobs";
+
+    // a RUNNING job whose heartbeat is older than the lease was abandoned by a stopped instance
+    private static final String CLAIMABLE =
+            " WHERE status = 'PENDING' OR (status = 'RUNNING' AND updated_at < ?)";
+
+    private static final RowMapper<DeleteJob> JOB_MAPPER = (rs, rowNum) -> new DeleteJob(
+            rs.getLong(1),
+            rs.getString(2),
+            rs.getLong(3),
+            rs.getString(4),
+            rs.getLong(5),
+            toInstant(rs.getTimestamp(6)),
+            toInstant(rs.getTimestamp(7)),
+            toInstant(rs.getTimestamp(8)));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long create(String userId, long fenceVersion) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO points_delete_jobs (user_id, fence_version, status) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, userId);
+            ps.setLong(2, fenceVersion);
+            ps.setString(3, STATUS_PENDING);
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    public Optional<DeleteJob> findById(long id) {
+        List<DeleteJob> jobs = jdbcTemplate.query(JOB_COLUMNS + " WHERE id = ?", JOB_MAPPER, id);
+        return jobs.stream().findFirst();
+    }
+
+    // oldest claimable job, marked RUNNING; empty when none is left or another instance won it
+    public Optional<DeleteJob> claimNext(Instant staleBefore) {
+        Timestamp stale = Timestamp.from(staleBefore);
+        List<DeleteJob> jobs = jdbcTemplate.query(
+                JOB_COLUMNS + CLAIMABLE + " ORDER BY id LIMIT 1", JOB_MAPPER, stale);
+        if (jobs.isEmpty()) {
+            return Optional.empty();
+        }
+        DeleteJob job = jobs.get(0);
+        int claimed = jdbcTemplate.update(
+                "UPDATE points_delete_jobs SET status = 'RUNNING',"
+                        + " started_at = COALESCE(started_at, CURRENT_TIMESTAMP(3)), updated_at = CURRENT_TIMESTAMP(3)"
+                        + " WHERE id = ? AND (status = 'PENDING' OR (status = 'RUNNING' AND updated_at < ?))",
+                job.id(),
+                stale);
+        return claimed == 1 ? findById(job.id()) : Optional.empty();
+    }
+
+    // one statement, one transaction: walks the user's rows on idx_points_user_id_id_amount and
+    // leaves those added after the delete, whatever their ids
+    public int deleteChunk(String userId, long fenceVersion, int limit) {
+        return jdbcTemplate.update(
+                "DELETE FROM points WHERE user_id = ? AND user_version <= ? ORDER BY id LIMIT ?",
+                userId,
+                fenceVersion,
+                limit);
+    }
+
+    public void recordProgress(long id, int deletedRows) {
+        jdbcTemplate.update(
+                "UPDATE points_delete_jobs SET deleted_rows = deleted_rows + ?, updated_at = CURRENT_TIMESTAMP(3)"
+                        + " WHERE id = ?",
+                deletedRows,
+                id);
+    }
+
+    public void markDone(long id) {
+        jdbcTemplate.update(
+                "UPDATE points_delete_jobs SET status = 'DONE', finished_at = CURRENT_TIMESTAMP(3),"
+                        + " updated_at = CURRENT_TIMESTAMP(3) WHERE id = ?",
+                id);
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    public record DeleteJob(
+            long id,
+            String userId,
+            long fenceVersion,
+            String status,
+            long deletedRows,
+            Instant createdAt,
+            Instant startedAt,
+            Instant finishedAt) {
+    }
+}
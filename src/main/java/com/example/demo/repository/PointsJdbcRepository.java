@@ -0,0 +1,290 @@
+package com.example.demo.repository;
+
+import com.example.demo.controller.dto.PointResponse;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.example.demo.model.points.entity.PointRecord;
+import com.example.demo.model.points.entity.UserPoints;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class PointsJdbcRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_POINT_SQL =
+            "INSERT INTO points (id, user_id, amount, reason, user_version) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_USER_POINTS_PREFIX =
+            "INSERT INTO user_points (user_id, total_points, version) VALUES ";
+
+    private static final String UPSERT_USER_POINTS_SUFFIX =
+            " ON DUPLICATE KEY UPDATE total_points = total_points + VALUES(total_points),"
+                    + " version = version + VALUES(version), deleted = FALSE";
+
+    private static final String WINDOW_TOTALS_SQL =
+            "SELECT user_id, SUM(amount) FROM points WHERE created_at >= ? AND created_at < ? GROUP BY user_id";
+
+    private static final String HISTORY_COLUMNS = "SELECT id, user_id, amount, reason, created_at FROM points";
+
+    private static final String ARCHIVE_HISTORY_COLUMNS =
+            "SELECT id, user_id, amount, reason, created_at FROM points_archive";
+
+    private static final RowMapper<PointResponse> POINT_RESPONSE_MAPPER = (rs, rowNum) -> {
+        PointResponse row = new PointResponse();
+        row.setId(rs.getLong(1));
+        row.setUserId(rs.getString(2));
+        row.setAmount(rs.getLong(3));
+        row.setReason(rs.getString(4));
+        Timestamp createdAt = rs.getTimestamp(5);
+        row.setCreatedAt(createdAt == null ? null : createdAt.toInstant());
+        return row;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // sent as a single multi-row INSERT when the URL has rewriteBatchedStatements=true;
+    // ids are assigned by the caller, so no generated keys have to be read back
+    public void insertAll(List<PointRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_POINT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PointRecord record = records.get(i);
+                if (record.getId() == null) {
+                    throw new IllegalStateException("point record without id userId=" + record.getUserId());
+                }
+                ps.setLong(1, record.getId());
+                ps.setString(2, record.getUserId());
+                ps.setLong(3, record.getAmount());
+                ps.setString(4, record.getReason());
+                ps.setLong(5, record.getUserVersion());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return records.size();
+            }
+        });
+    }
+
+    // Version advances by the number of points folded into the delta. Rows are written in
+    // user id order whatever the map's order: two batches sharing users then take the
+    // user_points row locks in the same order and cannot deadlock on each other.
+    public void upsertAddPoints(Map<String, UserDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, UserDelta>> entries = new ArrayList<>(deltas.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Map.Entry<String, UserDelta>> chunk =
+                    entries.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, entries.size()));
+            StringBuilder sql = new StringBuilder(UPSERT_USER_POINTS_PREFIX);
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(',');
+                }
+                sql.append("(?, ?, ?)");
+                args[i * 3] = chunk.get(i).getKey();
+                args[i * 3 + 1] = chunk.get(i).getValue().amount();
+                args[i * 3 + 2] = chunk.get(i).getValue().count();
+            }
+            sql.append(UPSERT_USER_POINTS_SUFFIX);
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    public Map<String, CachedTotalPoints> findTotals(Collection<String> userIds) {
+        Map<String, CachedTotalPoints> totals = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return totals;
+        }
+        List<String> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<String> chunk = ids.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, ids.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query(
+                    "SELECT user_id, total_points, version FROM user_points WHERE user_id IN ("
+                            + placeholders + ")",
+                    rs -> {
+                        totals.put(rs.getString(1), new CachedTotalPoints(rs.getLong(2), rs.getLong(3)));
+                    },
+                    chunk.toArray());
+        }
+        return totals;
+    }
+
+    public List<UserPoints> findUserPointsAfter(String afterUserId, int limit) {
+        return jdbcTemplate.query(
+                "SELECT user_id, total_points, version, deleted FROM user_points WHERE user_id > ? ORDER BY user_id LIMIT ?",
+                (rs, rowNum) -> {
+                    UserPoints row = new UserPoints();
+                    row.setUserId(rs.getString(1));
+                    row.setTotalPoints(rs.getLong(2));
+                    row.setVersion(rs.getLong(3));
+                    row.setDeleted(rs.getBoolean(4));
+                    return row;
+                },
+                afterUserId,
+                limit);
+    }
+
+    public long countUserPoints() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_points", Long.class);
+        return count == null ? 0L : count;
+    }
+
+    // byRecentActivity orders by updated_at, which has no index, so MySQL sorts before the first row;
+    // otherwise rows come straight off idx_user_points_total_points
+    public void streamTotals(boolean byRecentActivity, long limit, BiConsumer<String, CachedTotalPoints> consumer) {
+        String order = byRecentActivity ? "updated_at DESC" : "total_points DESC";
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT user_id, total_points, version FROM user_points WHERE deleted = FALSE ORDER BY "
+                                    + order + " LIMIT ?",
+                            ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setLong(1, limit);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(
+                        rs.getString(1), new CachedTotalPoints(rs.getLong(2), rs.getLong(3))));
+    }
+
+    // deleted users drop out at the next Bloom filter rebuild because their row is a tombstone
+    public void streamUserIds(Consumer<String> consumer) {
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT user_id FROM user_points WHERE deleted = FALSE",
+                            ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+
+    // range scan on idx_points_created_at; Connector/J streams the rows instead of buffering them
+    public void streamWindowTotals(Instant from, Instant to, BiConsumer<String, Long> consumer) {
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            WINDOW_TOTALS_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setTimestamp(1, Timestamp.from(from));
+                    ps.setTimestamp(2, Timestamp.from(to));
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(1), rs.getLong(2)));
+    }
+
+    public Map<String, Long> findWindowTotals(Collection<String> userIds, Instant from, Instant to) {
+        Map<String, Long> totals = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return totals;
+        }
+        List<String> ids = new ArrayList<>(userIds);
+        for (int start = 0; start < ids.size(); start += MAX_ROWS_PER_STATEMENT) {
+            List<String> chunk = ids.subList(start, Math.min(start + MAX_ROWS_PER_STATEMENT, ids.size()));
+            List<Object> args = new ArrayList<>(chunk.size() + 2);
+            args.add(Timestamp.from(from));
+            args.add(Timestamp.from(to));
+            args.addAll(chunk);
+            jdbcTemplate.query(
+                    "SELECT user_id, SUM(amount) FROM points WHERE created_at >= ? AND created_at < ? AND user_id IN ("
+                            + String.join(",", Collections.nCopies(chunk.size(), "?")) + ") GROUP BY user_id",
+                    rs -> {
+                        totals.put(rs.getString(1), rs.getLong(2));
+                    },
+                    args.toArray());
+        }
+        return totals;
+    }
+
+    // Newest first across points and points_archive; every archived id is lower than every
+    // hot one, so the archive is only read once the hot rows run out. Both tables are walked
+    // on their (user_id, id, amount) index.
+    public List<PointResponse> findHistory(String userId, Long beforeId, int limit) {
+        List<PointResponse> items = new ArrayList<>(findHistory(HISTORY_COLUMNS, userId, beforeId, limit));
+        if (items.size() < limit) {
+            // below the last hot row: a row archived between the two queries is not returned twice
+            Long archivedBefore = items.isEmpty() ? beforeId : items.get(items.size() - 1).getId();
+            items.addAll(findHistory(ARCHIVE_HISTORY_COLUMNS, userId, archivedBefore, limit - items.size()));
+        }
+        return items;
+    }
+
+    // Oldest first, streamed row by row: the archive, then points. A row the archiver moves
+    // while the archive part is being read is left out of the export.
+    public void streamHistory(String userId, Consumer<PointResponse> consumer) {
+        long[] lastArchivedId = {0L};
+        streamHistory(ARCHIVE_HISTORY_COLUMNS, userId, 0L, row -> {
+            lastArchivedId[0] = row.getId();
+            consumer.accept(row);
+        });
+        streamHistory(HISTORY_COLUMNS, userId, lastArchivedId[0], consumer);
+    }
+
+    private List<PointResponse> findHistory(String columns, String userId, Long beforeId, int limit) {
+        if (beforeId == null) {
+            return jdbcTemplate.query(
+                    columns + " WHERE user_id = ? ORDER BY id DESC LIMIT ?",
+                    POINT_RESPONSE_MAPPER,
+                    userId,
+                    limit);
+        }
+        return jdbcTemplate.query(
+                columns + " WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                POINT_RESPONSE_MAPPER,
+                userId,
+                beforeId,
+                limit);
+    }
+
+    private void streamHistory(String columns, String userId, long afterId, Consumer<PointResponse> consumer) {
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            columns + " WHERE user_id = ? AND id > ? ORDER BY id",
+                            ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setString(1, userId);
+                    ps.setLong(2, afterId);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(POINT_RESPONSE_MAPPER.mapRow(rs, 0)));
+    }
+
+    public record UserDelta(long amount, long count) {
+        public UserDelta plus(UserDelta other) {
+            return new UserDelta(amount + other.amount, count + other.count);
+        }
+    }
+}
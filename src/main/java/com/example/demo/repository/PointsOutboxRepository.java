@@ -0,0 +1,78 @@
+package com.example.demo.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class PointsOutboxRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO points_outbox (topic, message_key, payload) VALUES (?, ?, ?)";
+
+    // a plain read: only the relay holding the lease reads and marks rows, so there is nothing
+    // to lock against. Rows committed out of id order are read on a later poll; that cannot
+    // reorder one user's events, whose transactions queue on the user_points row lock and so
+    // insert their outbox rows in commit order.
+    private static final String FIND_PENDING_SQL =
+            "SELECT id, topic, message_key, payload FROM points_outbox WHERE sent_at IS NULL ORDER BY id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<OutboxMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(messages.size());
+        for (OutboxMessage message : messages) {
+            args.add(new Object[] {message.topic(), message.key(), message.payload()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+    }
+
+    public List<OutboxMessage> findPending(int limit) {
+        return jdbcTemplate.query(
+                FIND_PENDING_SQL,
+                (rs, rowNum) -> new OutboxMessage(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)),
+                limit);
+    }
+
+    public void markSent(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(
+                "UPDATE points_outbox SET sent_at = CURRENT_TIMESTAMP(3) WHERE id IN ("
+                        + String.join(",", Collections.nCopies(ids.size(), "?")) + ")",
+                ids.toArray());
+    }
+
+    public OutboxLag findLag() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), MIN(created_at) FROM points_outbox WHERE sent_at IS NULL",
+                (rs, rowNum) -> {
+                    Timestamp oldest = rs.getTimestamp(2);
+                    return new OutboxLag(rs.getLong(1), oldest == null ? null : oldest.toInstant());
+                });
+    }
+
+    public int purgeSent(Instant sentBefore, int limit) {
+        return jdbcTemplate.update(
+                "DELETE FROM points_outbox WHERE sent_at IS NOT NULL AND sent_at < ? LIMIT ?",
+                Timestamp.from(sentBefore),
+                limit);
+    }
+
+    public record OutboxMessage(Long id, String topic, String key, String payload) {
+    }
+
+    public record OutboxLag(long pending, Instant oldestCreatedAt) {
+    }
+}
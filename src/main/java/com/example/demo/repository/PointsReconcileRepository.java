@@ -0,0 +1,414 @@
+package com.example.demo.repository;
+
+import com.example.demo.controller.dto.ReconcileMismatchResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class PointsReconcileRepository {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String JOB_COLUMNS =
+            "SELECT id, repair, status, range_count, created_at, finished_at FROM points_reconcile_jobs";
+
+    private static final String RANGE_COLUMNS =
+            "SELECT r.job_id, r.range_no, r.from_user_id, r.to_user_id, r.checkpoint_user_id, j.repair"
+                    + " FROM points_reconcile_ranges r JOIN points_reconcile_jobs j ON j.id = r.job_id";
+
+    // a RUNNING range whose heartbeat is older than the lease was abandoned by a stopped instance
+    private static final String CLAIMABLE =
+            " WHERE r.status = 'PENDING' OR (r.status = 'RUNNING' AND r.updated_at < ?)";
+
+    private static final RowMapper<ReconcileJob> JOB_MAPPER = (rs, rowNum) -> new ReconcileJob(
+            rs.getLong(1),
+            rs.getBoolean(2),
+            rs.getString(3),
+            rs.getInt(4),
+            toInstant(rs.getTimestamp(5)),
+            toInstant(rs.getTimestamp(6)));
+
+    private static final RowMapper<ReconcileRange> RANGE_MAPPER = (rs, rowNum) -> new ReconcileRange(
+            rs.getLong(1),
+            rs.getInt(2),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getString(5),
+            rs.getBoolean(6));
+
+    private static final RowMapper<ReconcileMismatchResponse> MISMATCH_MAPPER = (rs, rowNum) -> {
+        ReconcileMismatchResponse row = new ReconcileMismatchResponse();
+        row.setUserId(rs.getString(1));
+        row.setLedgerTotal(rs.getLong(2));
+        row.setStoredTotal(rs.getObject(3, Long.class));
+        row.setRepaired(rs.getBoolean(4));
+        return row;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // boundaries that split user_points into ranges of about equal size; each one is an
+    // OFFSET from the previous boundary, so all of them together cost one primary key scan
+    public List<String> findRangeBoundaries(int ranges) {
+        Long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_points", Long.class);
+        long step = users == null ? 0 : users / ranges;
+        List<String> boundaries = new ArrayList<>();
+        if (step == 0) {
+            return boundaries;
+        }
+        String previous = "";
+        for (int i = 1; i < ranges; i++) {
+            List<String> next = jdbcTemplate.queryForList(
+                    "SELECT user_id FROM user_points WHERE user_id > ? ORDER BY user_id LIMIT 1 OFFSET ?",
+                    String.class,
+                    previous,
+                    step - 1);
+            if (next.isEmpty()) {
+                break;
+            }
+            previous = next.get(0);
+            boundaries.add(previous);
+        }
+        return boundaries;
+    }
+
+    // the ranges cover the whole key space, so ids that only exist in points are checked too
+    @Transactional
+    public long createJob(boolean repair, List<String> boundaries) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO points_reconcile_jobs (repair, status, range_count) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setBoolean(1, repair);
+            ps.setString(2, STATUS_RUNNING);
+            ps.setInt(3, boundaries.size() + 1);
+            return ps;
+        }, keyHolder);
+        long jobId = keyHolder.getKey().longValue();
+        List<Object[]> rows = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            rows.add(new Object[]{
+                    jobId,
+                    i,
+                    i == 0 ? null : boundaries.get(i - 1),
+                    i == boundaries.size() ? null : boundaries.get(i),
+                    STATUS_PENDING});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO points_reconcile_ranges (job_id, range_no, from_user_id, to_user_id, status)"
+                        + " VALUES (?, ?, ?, ?, ?)",
+                rows);
+        return jobId;
+    }
+
+    public Optional<ReconcileJob> findJob(long id) {
+        return jdbcTemplate.query(JOB_COLUMNS + " WHERE id = ?", JOB_MAPPER, id).stream().findFirst();
+    }
+
+    public Optional<ReconcileJob> findRunningJob() {
+        return jdbcTemplate.query(JOB_COLUMNS + " WHERE status = 'RUNNING' ORDER BY id LIMIT 1", JOB_MAPPER)
+                .stream()
+                .findFirst();
+    }
+
+    // first claimable range, marked RUNNING; empty when none is left or another worker won it
+    public Optional<ReconcileRange> claimRange(Instant staleBefore) {
+        Timestamp stale = Timestamp.from(staleBefore);
+        List<ReconcileRange> ranges = jdbcTemplate.query(
+                RANGE_COLUMNS + CLAIMABLE + " ORDER BY r.job_id, r.range_no LIMIT 1", RANGE_MAPPER, stale);
+        if (ranges.isEmpty()) {
+            return Optional.empty();
+        }
+        ReconcileRange range = ranges.get(0);
+        int claimed = jdbcTemplate.update(
+                "UPDATE points_reconcile_ranges SET status = 'RUNNING',"
+                        + " started_at = COALESCE(started_at, CURRENT_TIMESTAMP(3)), updated_at = CURRENT_TIMESTAMP(3)"
+                        + " WHERE job_id = ? AND range_no = ?"
+                        + " AND (status = 'PENDING' OR (status = 'RUNNING' AND updated_at < ?))",
+                range.jobId(),
+                range.rangeNo(),
+                stale);
+        return claimed == 1 ? Optional.of(range) : Optional.empty();
+    }
+
+    // One consistent snapshot over the next `limit` users of user_points after `after`: their
+    // stored totals, and the ledger over the same span, which is the per-user sums of the hot
+    // points rows plus the archived totals. Users with a pending delete job are left out,
+    // their ledger rows are still being removed.
+    @Transactional(readOnly = true)
+    public ChunkResult compareChunk(String after, String upTo, int limit) {
+        List<Object> args = new ArrayList<>();
+        String where = rangeClause(after, upTo, args);
+        args.add(limit);
+        Map<String, Long> stored = new LinkedHashMap<>();
+        String[] lastStored = new String[1];
+        jdbcTemplate.query(
+                "SELECT user_id, total_points FROM user_points" + where + " ORDER BY user_id LIMIT ?",
+                rs -> {
+                    lastStored[0] = rs.getString(1);
+                    stored.put(lastStored[0], rs.getLong(2));
+                },
+                args.toArray());
+
+        // the last id in the database's own collation order, not Java's
+        boolean rangeDone = stored.size() < limit;
+        String end = rangeDone ? upTo : lastStored[0];
+        Map<String, Long> ledger = new HashMap<>();
+        List<Object> ledgerArgs = new ArrayList<>();
+        jdbcTemplate.query(
+                // index-only on idx_points_user_id_id_amount
+                "SELECT user_id, SUM(amount) FROM points" + rangeClause(after, end, ledgerArgs) + " GROUP BY user_id",
+                rs -> {
+                    ledger.put(rs.getString(1), rs.getLong(2));
+                },
+                ledgerArgs.toArray());
+        List<Object> archivedArgs = new ArrayList<>();
+        jdbcTemplate.query(
+                "SELECT user_id, archived_total FROM points_archive_users" + rangeClause(after, end, archivedArgs),
+                rs -> {
+                    ledger.merge(rs.getString(1), rs.getLong(2), Long::sum);
+                },
+                archivedArgs.toArray());
+
+        Set<String> userIds = new LinkedHashSet<>(stored.keySet());
+        userIds.addAll(ledger.keySet());
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (String userId : userIds) {
+            long ledgerTotal = ledger.getOrDefault(userId, 0L);
+            Long storedTotal = stored.get(userId);
+            if (storedTotal == null ? ledger.containsKey(userId) : storedTotal != ledgerTotal) {
+                mismatches.add(new Mismatch(userId, ledgerTotal, storedTotal));
+            }
+        }
+        if (!mismatches.isEmpty()) {
+            Set<String> deleting = findPendingDeletes(mismatches.stream().map(Mismatch::userId).toList());
+            mismatches.removeIf(mismatch -> deleting.contains(mismatch.userId()));
+        }
+        return new ChunkResult(end, rangeDone, userIds.size(), mismatches);
+    }
+
+    // Locks the users' rows (or their gaps) first, so a concurrent add either committed
+    // before the sums are read or waits and lands on the repaired total. The archived
+    // totals are locked too, which makes a concurrent archive chunk commit either before
+    // the hot sums are read or after this transaction. version counts the points folded
+    // into the total and is left alone, except for a recreated row. Returns the repaired totals.
+    @Transactional
+    public Map<String, Long> repair(Collection<String> userIds) {
+        Map<String, Long> repaired = new LinkedHashMap<>();
+        if (userIds.isEmpty()) {
+            return repaired;
+        }
+        List<String> ids = new ArrayList<>(userIds);
+        String in = " IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        Map<String, Long> stored = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT user_id, total_points FROM user_points WHERE user_id" + in + " FOR UPDATE",
+                rs -> {
+                    stored.put(rs.getString(1), rs.getLong(2));
+                },
+                ids.toArray());
+        Map<String, long[]> ledger = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT user_id, archived_total, archived_count FROM points_archive_users WHERE user_id" + in
+                        + " FOR UPDATE",
+                rs -> {
+                    ledger.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3)});
+                },
+                ids.toArray());
+        Set<String> deleting = findPendingDeletes(ids);
+        jdbcTemplate.query(
+                "SELECT user_id, SUM(amount), COUNT(*) FROM points WHERE user_id" + in + " GROUP BY user_id",
+                rs -> {
+                    long[] sum = ledger.computeIfAbsent(rs.getString(1), k -> new long[2]);
+                    sum[0] += rs.getLong(2);
+                    sum[1] += rs.getLong(3);
+                },
+                ids.toArray());
+
+        StringBuilder sql = new StringBuilder("INSERT INTO user_points (user_id, total_points, version) VALUES ");
+        List<Object> args = new ArrayList<>();
+        for (String userId : ids) {
+            long[] sum = ledger.get(userId);
+            Long storedTotal = stored.get(userId);
+            if (deleting.contains(userId)
+                    || (storedTotal == null && sum == null)
+                    || (storedTotal != null && storedTotal == (sum == null ? 0L : sum[0]))) {
+                continue;
+            }
+            sql.append(args.isEmpty() ? "(?, ?, ?)" : ",(?, ?, ?)");
+            args.add(userId);
+            args.add(sum == null ? 0L : sum[0]);
+            args.add(sum == null ? 0L : sum[1]);
+            repaired.put(userId, sum == null ? 0L : sum[0]);
+        }
+        if (!args.isEmpty()) {
+            sql.append(" ON DUPLICATE KEY UPDATE total_points = VALUES(total_points)");
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+        return repaired;
+    }
+
+    public void recordMismatches(long jobId, List<Mismatch> mismatches, Set<String> repaired) {
+        for (int from = 0; from < mismatches.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Mismatch> chunk = mismatches.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, mismatches.size()));
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO points_reconcile_mismatches (job_id, user_id, ledger_total, stored_total, repaired) VALUES ");
+            Object[] args = new Object[chunk.size() * 5];
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(',');
+                }
+                sql.append("(?, ?, ?, ?, ?)");
+                Mismatch mismatch = chunk.get(i);
+                args[i * 5] = jobId;
+                args[i * 5 + 1] = mismatch.userId();
+                args[i * 5 + 2] = mismatch.ledgerTotal();
+                args[i * 5 + 3] = mismatch.storedTotal();
+                args[i * 5 + 4] = repaired.contains(mismatch.userId());
+            }
+            // a chunk redone after a crash finds the same users again
+            sql.append(" ON DUPLICATE KEY UPDATE ledger_total = VALUES(ledger_total),"
+                    + " stored_total = VALUES(stored_total), repaired = repaired OR VALUES(repaired)");
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    public List<ReconcileMismatchResponse> findMismatches(long jobId, int limit) {
+        return jdbcTemplate.query(
+                "SELECT user_id, ledger_total, stored_total, repaired FROM points_reconcile_mismatches"
+                        + " WHERE job_id = ? ORDER BY user_id LIMIT ?",
+                MISMATCH_MAPPER,
+                jobId,
+                limit);
+    }
+
+    // the checkpoint doubles as the heartbeat that keeps the range claimed
+    public void checkpoint(ReconcileRange range, String checkpointUserId, long checked, long mismatched, long repaired) {
+        jdbcTemplate.update(
+                "UPDATE points_reconcile_ranges SET checkpoint_user_id = ?, checked_users = checked_users + ?,"
+                        + " mismatched_users = mismatched_users + ?, repaired_users = repaired_users + ?,"
+                        + " updated_at = CURRENT_TIMESTAMP(3) WHERE job_id = ? AND range_no = ?",
+                checkpointUserId,
+                checked,
+                mismatched,
+                repaired,
+                range.jobId(),
+                range.rangeNo());
+    }
+
+    public void markRangeDone(ReconcileRange range) {
+        jdbcTemplate.update(
+                "UPDATE points_reconcile_ranges SET status = 'DONE', finished_at = CURRENT_TIMESTAMP(3),"
+                        + " updated_at = CURRENT_TIMESTAMP(3) WHERE job_id = ? AND range_no = ?",
+                range.jobId(),
+                range.rangeNo());
+    }
+
+    public void completeJobs() {
+        jdbcTemplate.update(
+                "UPDATE points_reconcile_jobs j SET status = 'DONE', finished_at = CURRENT_TIMESTAMP(3)"
+                        + " WHERE status = 'RUNNING' AND NOT EXISTS (SELECT 1 FROM points_reconcile_ranges r"
+                        + " WHERE r.job_id = j.id AND r.status <> 'DONE')");
+    }
+
+    public JobProgress findProgress(long jobId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(status = 'DONE'), 0), COALESCE(SUM(checked_users), 0),"
+                        + " COALESCE(SUM(mismatched_users), 0), COALESCE(SUM(repaired_users), 0), MIN(started_at)"
+                        + " FROM points_reconcile_ranges WHERE job_id = ?",
+                (rs, rowNum) -> new JobProgress(
+                        rs.getInt(1),
+                        rs.getLong(2),
+                        rs.getLong(3),
+                        rs.getLong(4),
+                        toInstant(rs.getTimestamp(5))),
+                jobId);
+    }
+
+    private Set<String> findPendingDeletes(Collection<String> userIds) {
+        List<Object> args = new ArrayList<>(userIds);
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT user_id FROM points_delete_jobs WHERE status <> 'DONE' AND user_id IN ("
+                        + String.join(",", Collections.nCopies(userIds.size(), "?")) + ")",
+                String.class,
+                args.toArray()));
+    }
+
+    private static String rangeClause(String after, String upTo, List<Object> args) {
+        List<String> conditions = new ArrayList<>(2);
+        if (after != null) {
+            conditions.add("user_id > ?");
+            args.add(after);
+        }
+        if (upTo != null) {
+            conditions.add("user_id <= ?");
+            args.add(upTo);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    public record ReconcileJob(
+            long id,
+            boolean repair,
+            String status,
+            int rangeCount,
+            Instant createdAt,
+            Instant finishedAt) {
+    }
+
+    public record ReconcileRange(
+            long jobId,
+            int rangeNo,
+            String fromUserId,
+            String toUserId,
+            String checkpointUserId,
+            boolean repair) {
+    }
+
+    // storedTotal is null when the user has ledger rows but no user_points row
+    public record Mismatch(String userId, long ledgerTotal, Long storedTotal) {
+    }
+
+    // next is where the following chunk starts; rangeDone when it reached the end of the range
+    public record ChunkResult(String next, boolean rangeDone, long checkedUsers, List<Mismatch> mismatches) {
+    }
+
+    public record JobProgress(
+            int rangesDone,
+            long checkedUsers,
+            long mismatchedUsers,
+            long repairedUsers,
+            Instant startedAt) {
+    }
+}
@@ -12,14 +12,25 @@ public interface UserPointsRepository extends JpaRepository<UserPoints, String>
 
     @Modifying
     @Query(value = """
-            INSERT INTO user_points (user_id, total_points)
-            VALUES (:userId, :amount)
+            INSERT INTO user_points (user_id, total_points, version)
+            VALUES (:userId, :amount, 1)
             ON DUPLICATE KEY UPDATE
-              total_points = total_points + VALUES(total_points)
+              total_points = total_points + VALUES(total_points),
+              version = version + VALUES(version),
+              deleted = FALSE
             """, nativeQuery = true)
     void upsertAddPoints(
             @Param("userId") String userId,
             @Param("amount") long amount);
 
-    List<UserPoints> findTop20ByOrderByTotalPointsDesc();
+    // the row stays as a tombstone so its version keeps counting up: a cache write
+    // carrying a version from before the delete can never win over it
+    @Modifying
+    @Query(value = """
+            UPDATE user_points SET total_points = 0, version = version + 1, deleted = TRUE
+            WHERE user_id = :userId
+            """, nativeQuery = true)
+    int markDeleted(@Param("userId") String userId);
+
+    List<UserPoints> findTop20ByDeletedFalseOrderByTotalPointsDesc();
 }
@@ -0,0 +1,26 @@
+package com.example.demo.service;
+
+import com.example.demo.controller.dto.CacheWarmupResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+// part of the readiness group: out of service until the startup warm-up reaches demo.warmup.ready-fraction
+@Component
+@RequiredArgsConstructor
+public class CacheWarmupHealthIndicator implements HealthIndicator {
+
+    private final CacheWarmupRunner cacheWarmupRunner;
+
+    @Override
+    public Health health() {
+        CacheWarmupResponse status = cacheWarmupRunner.status();
+        Health.Builder builder = cacheWarmupRunner.isReady() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("state", status.getState())
+                .withDetail("warmed", status.getWarmed())
+                .withDetail("target", status.getTarget())
+                .build();
+    }
+}
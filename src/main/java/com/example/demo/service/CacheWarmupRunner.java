@@ -0,0 +1,239 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.SchedulerLease;
+import com.example.demo.cache.UserTotalPointsRedis;
+import com.example.demo.controller.dto.CacheWarmupResponse;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.example.demo.model.points.cache.RedisKeys;
+import com.example.demo.repository.PointsJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams user_points into the total cache after startup and whenever the warm marker
+// disappears from Redis, which is what a flush or a failover to an empty replica looks
+// like. Writes go through the set-if-newer script, so they never replace a fresher total.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheWarmupRunner {
+
+    public static final String STATE_IDLE = "idle";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_DONE = "done";
+    public static final String STATE_FAILED = "failed";
+    public static final String STATE_SKIPPED = "skipped";
+
+    private static final String LEASE_TASK = "cache-warmup";
+    private static final Duration LEASE_TTL = Duration.ofSeconds(30);
+
+    private final PointsJdbcRepository pointsJdbcRepository;
+    private final UserTotalPointsRedis userTotalPointsRedis;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SchedulerLease schedulerLease;
+
+    @Value("${demo.warmup.enabled:true}")
+    private boolean enabled;
+
+    // top: highest totals first (indexed); recent: most recently updated first
+    @Value("${demo.warmup.order:top}")
+    private String order;
+
+    @Value("${demo.warmup.max-users:200000}")
+    private long maxUsers;
+
+    @Value("${demo.warmup.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${demo.warmup.rows-per-second:20000}")
+    private long rowsPerSecond;
+
+    @Value("${demo.warmup.ready-fraction:0.8}")
+    private double readyFraction;
+
+    // readiness is never held longer than this, even if the warm-up is slow or fails
+    @Value("${demo.warmup.readiness-timeout-ms:120000}")
+    private long readinessTimeoutMs;
+
+    @Value("${demo.cache.points-ttl-seconds:600}")
+    private long cacheTtlSeconds;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong warmed = new AtomicLong();
+    private final AtomicBoolean startupReached = new AtomicBoolean();
+    private volatile long readinessDeadline = Long.MAX_VALUE;
+    private volatile long startupBeganAt;
+    private volatile String state = STATE_IDLE;
+    private volatile String trigger;
+    private volatile long target;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        startupBeganAt = System.currentTimeMillis();
+        readinessDeadline = startupBeganAt + readinessTimeoutMs;
+        if (!enabled) {
+            startupReached.set(true);
+            return;
+        }
+        Long warmAt = readMarker();
+        if (warmAt != null && System.currentTimeMillis() - warmAt < TimeUnit.SECONDS.toMillis(cacheTtlSeconds)) {
+            // another instance warmed recently enough that its keys are still cached
+            state = STATE_SKIPPED;
+            startupReached.set(true);
+            return;
+        }
+        warm("startup");
+    }
+
+    // a flush removes the marker with everything else; the lease keeps it to one instance
+    @Scheduled(fixedDelayString = "${demo.warmup.marker-check-ms:30000}")
+    public void checkMarker() {
+        if (!enabled || startupBeganAt == 0) {
+            return;
+        }
+        Long warmAt = readMarker();
+        if (!startupReached.get() && warmAt != null && warmAt >= startupBeganAt) {
+            // warmed by the instance that held the lease during our startup
+            startupReached.set(true);
+        }
+        if (warmAt == null && !running.get()) {
+            warm("marker-missing");
+        }
+    }
+
+    public boolean isReady() {
+        return startupReached.get() || System.currentTimeMillis() > readinessDeadline;
+    }
+
+    public boolean warm(String reason) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            if (!schedulerLease.tryAcquire(LEASE_TASK, LEASE_TTL)) {
+                log.info("[CacheWarmupRunner][warm] another instance is warming reason={}", reason);
+                return false;
+            }
+            try {
+                run(reason);
+            } finally {
+                schedulerLease.release(LEASE_TASK);
+            }
+            return true;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public CacheWarmupResponse status() {
+        long done = warmed.get();
+        long total = target;
+        CacheWarmupResponse response = new CacheWarmupResponse();
+        response.setState(state);
+        response.setTrigger(trigger);
+        response.setTarget(total);
+        response.setWarmed(done);
+        response.setFraction(total == 0 ? 1.0 : (double) done / total);
+        Instant start = startedAt;
+        if (start != null) {
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long elapsedMs = Math.max(1L, end.toEpochMilli() - start.toEpochMilli());
+            response.setRowsPerSecond(done * 1000.0 / elapsedMs);
+        }
+        response.setStartedAt(start);
+        response.setFinishedAt(finishedAt);
+        return response;
+    }
+
+    private void run(String reason) {
+        trigger = reason;
+        state = STATE_RUNNING;
+        startedAt = Instant.now();
+        finishedAt = null;
+        warmed.set(0);
+        try {
+            target = Math.min(maxUsers, pointsJdbcRepository.countUserPoints());
+            log.info("[CacheWarmupRunner][run] started reason={} target={} order={}", reason, target, order);
+            reachedFraction();
+            long started = System.nanoTime();
+            long logEvery = Math.max(batchSize, target / 10);
+            Map<String, CachedTotalPoints> batch = new LinkedHashMap<>();
+            pointsJdbcRepository.streamTotals("recent".equals(order), target, (userId, total) -> {
+                batch.put(userId, total);
+                if (batch.size() >= batchSize) {
+                    flush(batch, started, logEvery);
+                }
+            });
+            flush(batch, started, logEvery);
+            stringRedisTemplate.opsForValue().set(RedisKeys.CACHE_WARM_MARKER, Long.toString(System.currentTimeMillis()));
+            state = STATE_DONE;
+            log.info("[CacheWarmupRunner][run] finished reason={} warmed={} elapsedMs={}",
+                    reason, warmed.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception ex) {
+            state = STATE_FAILED;
+            log.error("[CacheWarmupRunner][run] failed reason={} warmed={}", reason, warmed.get(), ex);
+        } finally {
+            finishedAt = Instant.now();
+            // a failed or short warm-up must not keep the instance out of rotation
+            startupReached.set(true);
+        }
+    }
+
+    // one set-if-newer script call per batch, paced to rows-per-second so live traffic keeps Redis and MySQL
+    private void flush(Map<String, CachedTotalPoints> batch, long startedNanos, long logEvery) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!schedulerLease.tryAcquire(LEASE_TASK, LEASE_TTL)) {
+            throw new IllegalStateException("cache warm-up lease lost");
+        }
+        userTotalPointsRedis.setAll(batch);
+        long before = warmed.get();
+        long done = warmed.addAndGet(batch.size());
+        batch.clear();
+        if (done / logEvery != before / logEvery) {
+            log.info("[CacheWarmupRunner][flush] progress warmed={} target={}", done, target);
+        }
+        reachedFraction();
+        if (rowsPerSecond > 0) {
+            long dueNanos = done * TimeUnit.SECONDS.toNanos(1) / rowsPerSecond;
+            long aheadMs = TimeUnit.NANOSECONDS.toMillis(dueNanos - (System.nanoTime() - startedNanos));
+            if (aheadMs > 0) {
+                try {
+                    Thread.sleep(aheadMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("cache warm-up interrupted");
+                }
+            }
+        }
+    }
+
+    private void reachedFraction() {
+        if (target == 0 || (double) warmed.get() / target >= readyFraction) {
+            startupReached.set(true);
+        }
+    }
+
+    private Long readMarker() {
+        String value = stringRedisTemplate.opsForValue().get(RedisKeys.CACHE_WARM_MARKER);
+        return value == null ? null : Long.parseLong(value);
+    }
+}
@@ -1,32 +1,214 @@
 package com.example.demo.service;
 
 import com.example.demo.cache.LeaderboardRedis;
+import com.example.demo.cache.SchedulerLease;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.model.points.cache.RedisKeys;
 import com.example.demo.model.points.entity.UserPoints;
+import com.example.demo.repository.PointsJdbcRepository;
 import com.example.demo.repository.UserPointsRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LeaderboardRefreshScheduler {
 
+    private static final int DRIFT_CHECK_SIZE = 20;
+    private static final String LEASE_TASK = "leaderboard-refresh";
+
     private final UserPointsRepository userPointsRepository;
+    private final PointsJdbcRepository pointsJdbcRepository;
     private final LeaderboardRedis leaderboardRedis;
+    private final LeaderboardWindowRebuilder leaderboardWindowRebuilder;
+    private final SchedulerLease schedulerLease;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${demo.leaderboard.reconcile-ms:300000}")
+    private long reconcileMs;
+
+    @Value("${demo.leaderboard.rebuild-chunk-size:5000}")
+    private int rebuildChunkSize;
+
+    // only slightly longer than lease-heartbeat-ms: the leader keeps the lease through
+    // heartbeat(), so a dead leader's lease lapses within lease-ms whatever refresh-ms is
+    @Value("${demo.leaderboard.lease-ms:4000}")
+    private long leaseMs;
+
+    private long lastCheckedVersion = Long.MIN_VALUE;
+    private long lastRebuiltAt;
+    private long lastRebuiltVersion = Long.MIN_VALUE;
+
+    // Every instance ticks: the leader renews, the others take the lease once it has lapsed.
+    // A run also renews as it goes, so a late heartbeat cannot hand a running rebuild over.
+    @Scheduled(fixedRateString = "${demo.leaderboard.lease-heartbeat-ms:3000}")
+    public void heartbeat() {
+        try {
+            schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs));
+        } catch (Exception ex) {
+            log.warn("[LeaderboardRefreshScheduler][heartbeat] lease renewal failed", ex);
+        }
+    }
 
     @Scheduled(fixedDelayString = "${demo.leaderboard.refresh-ms:300000}")
     public void refreshLeaderboard() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // drift counts stay out of the tag to keep its cardinality fixed
+        String trigger = "none";
+        String outcome = "success";
         try {
-            List<UserPoints> topUsers = userPointsRepository.findTop20ByOrderByTotalPointsDesc();
-            leaderboardRedis.replaceTop(topUsers);
-            log.debug("[LeaderboardRefreshScheduler] refreshed leaderboard entries={}",
-                    topUsers == null ? 0 : topUsers.size());
+            if (!schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs))) {
+                outcome = "skipped";
+                return;
+            }
+            long version = leaderboardRedis.getVersion();
+            long now = System.currentTimeMillis();
+            String reason = null;
+            if (!leaderboardRedis.exists()) {
+                reason = "missing";
+                trigger = "missing";
+            } else if (version != lastCheckedVersion) {
+                int drift = countDrift(
+                        userPointsRepository.findTop20ByDeletedFalseOrderByTotalPointsDesc(),
+                        leaderboardRedis.getTop(DRIFT_CHECK_SIZE));
+                lastCheckedVersion = version;
+                if (drift > 0) {
+                    reason = "top drift=" + drift;
+                    trigger = "drift";
+                }
+            }
+            if (reason == null && now - lastRebuiltAt >= reconcileMs && version != lastRebuiltVersion) {
+                reason = "periodic";
+                trigger = "periodic";
+            }
+            if (reason == null) {
+                return;
+            }
+            long rows = rebuild();
+            lastRebuiltAt = now;
+            lastRebuiltVersion = version;
+            log.info("[LeaderboardRefreshScheduler] rebuilt leaderboard reason={} entries={}", reason, rows);
+            if ("missing".equals(reason)) {
+                // the windows were most likely lost with the all-time board
+                rebuildCurrentWindows();
+            }
         } catch (Exception ex) {
+            outcome = "failure";
             log.error("[LeaderboardRefreshScheduler] refresh failed", ex);
+        } finally {
+            sample.stop(Timer.builder("points.leaderboard.refresh")
+                    .tag("trigger", trigger)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private void rebuildCurrentWindows() {
+        Instant now = Instant.now();
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            renewLease();
+            leaderboardWindowRebuilder.rebuild(window, now);
+        }
+    }
+
+    // a rebuild that outlives the lease must not keep writing next to the new leader
+    private void renewLease() {
+        if (!schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs))) {
+            throw new IllegalStateException("leaderboard refresh lease lost");
+        }
+    }
+
+    private long rebuild() {
+        String boardKey = RedisKeys.LEADERBOARD_KEY;
+        String stagingKey = leaderboardRedis.beginRebuild(boardKey);
+        long rows = 0;
+        try {
+            String cursor = "";
+            while (true) {
+                List<UserPoints> chunk = pointsJdbcRepository.findUserPointsAfter(cursor, rebuildChunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                Map<String, Long> scores = new LinkedHashMap<>();
+                for (UserPoints row : chunk) {
+                    if (!row.getDeleted()) {
+                        scores.put(row.getUserId(), row.getTotalPoints());
+                    }
+                }
+                renewLease();
+                leaderboardRedis.stageChunk(boardKey, stagingKey, scores);
+                rows += scores.size();
+                cursor = chunk.get(chunk.size() - 1).getUserId();
+                if (chunk.size() < rebuildChunkSize) {
+                    break;
+                }
+            }
+            List<String> touched = leaderboardRedis.swapIn(boardKey, stagingKey, null);
+            repairTouched(touched);
+        } catch (RuntimeException ex) {
+            leaderboardRedis.abortRebuild(boardKey, stagingKey);
+            throw ex;
+        }
+        return rows;
+    }
+
+    // users written while the rebuild was streaming may have been staged with an older total
+    private void repairTouched(List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Map<String, Long> present = new HashMap<>();
+        for (UserPoints row : userPointsRepository.findAllById(userIds)) {
+            if (!row.getDeleted()) {
+                present.put(row.getUserId(), row.getTotalPoints());
+            }
+        }
+        List<String> absent = new ArrayList<>();
+        for (String userId : userIds) {
+            if (!present.containsKey(userId)) {
+                absent.add(userId);
+            }
+        }
+        leaderboardRedis.setScores(RedisKeys.LEADERBOARD_KEY, present);
+        leaderboardRedis.removeUsers(RedisKeys.LEADERBOARD_KEY, absent);
+    }
+
+    // order-insensitive so that ties broken differently by MySQL and Redis do not count
+    private int countDrift(List<UserPoints> expected, Set<ZSetOperations.TypedTuple<String>> actual) {
+        List<UserPoints> rows = expected == null ? List.of() : expected;
+        Map<String, Long> board = new HashMap<>();
+        if (actual != null) {
+            for (ZSetOperations.TypedTuple<String> entry : actual) {
+                board.put(entry.getValue(), entry.getScore() == null ? 0L : entry.getScore().longValue());
+            }
+        }
+        int drift = Math.abs(rows.size() - board.size());
+        if (rows.isEmpty()) {
+            return drift;
+        }
+        long lowest = rows.get(rows.size() - 1).getTotalPoints();
+        for (UserPoints row : rows) {
+            Long score = board.get(row.getUserId());
+            if (score == null ? row.getTotalPoints() != lowest : !score.equals(row.getTotalPoints())) {
+                drift++;
+            }
         }
+        return drift;
     }
 }
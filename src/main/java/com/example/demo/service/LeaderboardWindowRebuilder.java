@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.LeaderboardRedis;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.repository.PointsJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LeaderboardWindowRebuilder {
+
+    private final PointsJdbcRepository pointsJdbcRepository;
+    private final LeaderboardRedis leaderboardRedis;
+
+    @Value("${demo.leaderboard.rebuild-chunk-size:5000}")
+    private int rebuildChunkSize;
+
+    // rebuilds the window containing at from the points table and returns the entry count
+    public long rebuild(LeaderboardWindow window, Instant at) {
+        String boardKey = window.key(at);
+        Instant from = window.startInstant(at);
+        Instant to = window.endInstant(at);
+        String stagingKey = leaderboardRedis.beginRebuild(boardKey);
+        long[] rows = new long[1];
+        try {
+            Map<String, Long> chunk = new LinkedHashMap<>();
+            pointsJdbcRepository.streamWindowTotals(from, to, (userId, total) -> {
+                chunk.put(userId, total);
+                rows[0]++;
+                if (chunk.size() >= rebuildChunkSize) {
+                    leaderboardRedis.stageChunk(boardKey, stagingKey, chunk);
+                    chunk.clear();
+                }
+            });
+            leaderboardRedis.stageChunk(boardKey, stagingKey, chunk);
+            List<String> touched = leaderboardRedis.swapIn(boardKey, stagingKey, window.ttl());
+            repairTouched(boardKey, touched, from, to);
+        } catch (RuntimeException ex) {
+            leaderboardRedis.abortRebuild(boardKey, stagingKey);
+            throw ex;
+        }
+        log.info("[LeaderboardWindowRebuilder] rebuilt key={} entries={}", boardKey, rows[0]);
+        return rows[0];
+    }
+
+    private void repairTouched(String boardKey, List<String> userIds, Instant from, Instant to) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Map<String, Long> totals = pointsJdbcRepository.findWindowTotals(userIds, from, to);
+        List<String> absent = new ArrayList<>();
+        for (String userId : userIds) {
+            if (!totals.containsKey(userId)) {
+                absent.add(userId);
+            }
+        }
+        leaderboardRedis.setScores(boardKey, totals);
+        leaderboardRedis.removeUsers(boardKey, absent);
+    }
+}
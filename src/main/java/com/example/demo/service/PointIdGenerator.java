@@ -0,0 +1,114 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.SchedulerLease;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ids for points rows, assigned before the insert so JDBC and Hibernate can batch it.
+// The node id is a lease in Redis (points:lease:point-id-node:<n>), so two running
+// instances never share one. Ids stop being issued once the lease could have expired;
+// they would otherwise collide with whoever takes the node id over.
+// The lease is taken by the first renew() run or the first nextId(), not at startup, so
+// the application starts without Redis; until a lease is held, adds fail with 503.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointIdGenerator {
+
+    private static final String LEASE_TASK_PREFIX = "point-id-node:";
+    // allowance for clock skew between this instance and the next holder of the node id
+    private static final long SKEW_MARGIN_MS = 1000;
+
+    private final SchedulerLease schedulerLease;
+
+    // renew-ms must be well below this
+    @Value("${demo.point-ids.node-lease-ms:60000}")
+    private long leaseMs;
+
+    private final ReentrantLock acquireLock = new ReentrantLock();
+    private volatile SnowflakeIdGenerator generator;
+    private volatile long validUntil;
+
+    public long nextId() {
+        SnowflakeIdGenerator current = generator;
+        if (current == null) {
+            current = tryAcquireNode();
+        }
+        if (current == null || System.currentTimeMillis() > validUntil) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "point id node lease is not held");
+        }
+        return current.nextId();
+    }
+
+    @Scheduled(fixedDelayString = "${demo.point-ids.renew-ms:10000}")
+    public void renew() {
+        try {
+            SnowflakeIdGenerator current = generator;
+            long started = System.currentTimeMillis();
+            if (current != null && schedulerLease.tryAcquire(task(current.getNodeId()), Duration.ofMillis(leaseMs))) {
+                validUntil = started + leaseMs - SKEW_MARGIN_MS;
+                return;
+            }
+            // never held, or lapsed and may belong to another instance by now
+            generator = null;
+            acquireLock.lock();
+            try {
+                // a caller of nextId() may have taken one meanwhile
+                if (generator == null) {
+                    acquireNode();
+                }
+            } finally {
+                acquireLock.unlock();
+            }
+        } catch (Exception ex) {
+            // ids keep being issued until the last renewed lease could have run out
+            log.warn("[PointIdGenerator][renew] node lease renewal failed", ex);
+        }
+    }
+
+    // callers that find another one acquiring do not queue up behind it on Redis
+    private SnowflakeIdGenerator tryAcquireNode() {
+        if (!acquireLock.tryLock()) {
+            return generator;
+        }
+        try {
+            if (generator == null) {
+                acquireNode();
+            }
+        } catch (Exception ex) {
+            log.warn("[PointIdGenerator][tryAcquireNode] node lease acquisition failed", ex);
+        } finally {
+            acquireLock.unlock();
+        }
+        return generator;
+    }
+
+    private void acquireNode() {
+        int offset = ThreadLocalRandom.current().nextInt(SnowflakeIdGenerator.MAX_NODES);
+        for (int i = 0; i < SnowflakeIdGenerator.MAX_NODES; i++) {
+            int nodeId = (offset + i) % SnowflakeIdGenerator.MAX_NODES;
+            long started = System.currentTimeMillis();
+            if (schedulerLease.tryAcquire(task(nodeId), Duration.ofMillis(leaseMs))) {
+                // validUntil first: nextId() reads generator, then validUntil
+                validUntil = started + leaseMs - SKEW_MARGIN_MS;
+                generator = new SnowflakeIdGenerator(nodeId);
+                log.info("[PointIdGenerator][acquireNode] nodeId={}", nodeId);
+                return;
+            }
+        }
+        throw new IllegalStateException("all " + SnowflakeIdGenerator.MAX_NODES + " point id nodes are leased");
+    }
+
+    private static String task(int nodeId) {
+        return LEASE_TASK_PREFIX + nodeId;
+    }
+}
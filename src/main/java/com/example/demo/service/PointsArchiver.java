@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.SchedulerLease;
+import com.example.demo.repository.PointsArchiveRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// Moves points rows older than min-age-days into points_archive, oldest id first, in
+// chunks that each commit on their own. One instance at a time, so chunks never contend
+// for the same rows.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsArchiver {
+
+    private static final String LEASE_TASK = "points-archive";
+    // the daily, weekly and monthly leaderboards are rebuilt from points by created_at
+    private static final int MIN_AGE_DAYS_FLOOR = 32;
+
+    private final PointsArchiveRepository pointsArchiveRepository;
+    private final SchedulerLease schedulerLease;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${demo.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${demo.archive.min-age-days:180}")
+    private int minAgeDays;
+
+    @Value("${demo.archive.chunk-size:2000}")
+    private int chunkSize;
+
+    @Value("${demo.archive.chunk-pause-ms:100}")
+    private long chunkPauseMs;
+
+    // bounds one run, so the lease changes hands and a run never outlasts a deploy by much
+    @Value("${demo.archive.max-chunks-per-run:500}")
+    private int maxChunksPerRun;
+
+    @Value("${demo.archive.lease-ms:60000}")
+    private long leaseMs;
+
+    private Counter archivedRows;
+
+    @PostConstruct
+    public void start() {
+        archivedRows = Counter.builder("points.archive.rows").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${demo.archive.poll-ms:60000}")
+    public void archive() {
+        if (!enabled || !schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs))) {
+            return;
+        }
+        long started = System.nanoTime();
+        long moved = 0;
+        try {
+            Instant createdBefore = Instant.now().minus(Duration.ofDays(Math.max(minAgeDays, MIN_AGE_DAYS_FLOOR)));
+            Long cutoffId = pointsArchiveRepository.findCutoffId(createdBefore);
+            if (cutoffId == null) {
+                return;
+            }
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                int rows = pointsArchiveRepository.archiveChunk(cutoffId, chunkSize);
+                moved += rows;
+                archivedRows.increment(rows);
+                if (rows < chunkSize || !schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs))) {
+                    break;
+                }
+                if (chunkPauseMs > 0) {
+                    Thread.sleep(chunkPauseMs);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            // every chunk that committed stays archived; the next run starts after it
+            log.warn("[PointsArchiver][archive] archive run failed moved={}", moved, ex);
+        } finally {
+            if (moved > 0) {
+                log.info("[PointsArchiver][archive] moved={} tookMs={}",
+                        moved, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.PointsArchiveRepository;
+import com.example.demo.repository.PointsDeleteJobRepository;
+import com.example.demo.repository.PointsDeleteJobRepository.DeleteJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsDeleteJobRunner {
+
+    private final PointsDeleteJobRepository pointsDeleteJobRepository;
+    private final PointsArchiveRepository pointsArchiveRepository;
+
+    @Value("${demo.delete-jobs.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${demo.delete-jobs.chunk-pause-ms:10}")
+    private long chunkPauseMs;
+
+    @Value("${demo.delete-jobs.lease-ms:60000}")
+    private long leaseMs;
+
+    @Scheduled(fixedDelayString = "${demo.delete-jobs.poll-ms:1000}")
+    public void runJobs() {
+        try {
+            Optional<DeleteJob> job;
+            while ((job = pointsDeleteJobRepository.claimNext(Instant.now().minusMillis(leaseMs))).isPresent()) {
+                if (!run(job.get())) {
+                    return;
+                }
+            }
+        } catch (Exception ex) {
+            // the job keeps its progress and is reclaimed once its lease runs out
+            log.warn("[PointsDeleteJobRunner] delete job failed", ex);
+        }
+    }
+
+    // Each chunk commits on its own, so locks and undo are bounded by chunk-size rows.
+    // points goes first: rows the archiver moves meanwhile are then found in the archive.
+    private boolean run(DeleteJob job) {
+        long started = System.nanoTime();
+        long deletedRows = 0;
+        for (boolean archived : new boolean[]{false, true}) {
+            int deleted;
+            do {
+                deleted = archived
+                        ? pointsArchiveRepository.deleteArchivedChunk(job.userId(), job.fenceVersion(), chunkSize)
+                        : pointsDeleteJobRepository.deleteChunk(job.userId(), job.fenceVersion(), chunkSize);
+                pointsDeleteJobRepository.recordProgress(job.id(), deleted);
+                deletedRows += deleted;
+                if (deleted == chunkSize && chunkPauseMs > 0) {
+                    try {
+                        Thread.sleep(chunkPauseMs);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            } while (deleted == chunkSize);
+        }
+        pointsDeleteJobRepository.markDone(job.id());
+        log.info("[PointsDeleteJobRunner] done jobId={} userId={} deleted={} tookMs={}",
+                job.id(), job.userId(), deletedRows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return true;
+    }
+}
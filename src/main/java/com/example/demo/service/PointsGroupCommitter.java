@@ -0,0 +1,197 @@
+package com.example.demo.service;
+
+import com.example.demo.controller.dto.AddPointsRequest;
+import com.example.demo.controller.dto.PointResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsGroupCommitter {
+
+    private static final long IDLE_POLL_MS = 100;
+
+    private final PointsService pointsService;
+
+    @Value("${demo.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${demo.group-commit.batch-size:200}")
+    private int batchSize;
+
+    @Value("${demo.group-commit.max-linger-ms:2}")
+    private long maxLingerMs;
+
+    @Value("${demo.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // how long a caller waits for its batch before answering 503
+    @Value("${demo.group-commit.wait-timeout-ms:5000}")
+    private long waitTimeoutMs;
+
+    private BlockingQueue<PendingAdd> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = Thread.ofPlatform()
+                .name("points-group-commit")
+                .daemon(true)
+                .start(this::runWriter);
+        log.info("[PointsGroupCommitter] started batchSize={} maxLingerMs={} queueCapacity={}",
+                batchSize, maxLingerMs, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public PointResponse addPoints(AddPointsRequest request) {
+        pointsService.validateAddRequest(request);
+        PendingAdd pending = new PendingAdd(request, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "write queue is full");
+        }
+        try {
+            return pending.future().get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            // still queued: the writer skips it; already in a batch: it may still commit
+            pending.future().cancel(false);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "write timed out");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            pending.future().cancel(false);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "write interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ResponseStatusException statusException) {
+                throw statusException;
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "failed to add points");
+        }
+    }
+
+    private void runWriter() {
+        List<PendingAdd> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    collect(batch);
+                } catch (InterruptedException ex) {
+                    // shutdown: flush what was collected, then drain the rest of the queue
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        } finally {
+            // also reached when an Error ends the writer: new requests get 503 instead of queueing
+            running = false;
+            ResponseStatusException stopped =
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "write queue stopped");
+            for (PendingAdd pending : batch) {
+                pending.future().completeExceptionally(stopped);
+            }
+            PendingAdd pending;
+            while ((pending = queue.poll()) != null) {
+                pending.future().completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void collect(List<PendingAdd> batch) throws InterruptedException {
+        PendingAdd first = running ? queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS) : queue.poll();
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - batch.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+        while (running && batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingAdd next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    // A failed batch is rolled back as a whole, so its requests are retried one by one:
+    // a request the database rejects then fails alone instead of failing its whole batch.
+    private void flush(List<PendingAdd> batch) {
+        batch.removeIf(pending -> pending.future().isDone());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } catch (Exception ex) {
+            if (batch.size() == 1) {
+                log.warn("[PointsGroupCommitter][flush] write failed", ex);
+                batch.get(0).future().completeExceptionally(ex);
+                return;
+            }
+            log.warn("[PointsGroupCommitter][flush] group write failed size={}, retrying one by one",
+                    batch.size(), ex);
+            for (PendingAdd pending : batch) {
+                try {
+                    write(List.of(pending));
+                } catch (Exception itemEx) {
+                    log.warn("[PointsGroupCommitter][flush] write failed userId={}",
+                            pending.request().getUserId(), itemEx);
+                    pending.future().completeExceptionally(itemEx);
+                }
+            }
+        }
+    }
+
+    private void write(List<PendingAdd> pendingAdds) {
+        List<AddPointsRequest> requests = new ArrayList<>(pendingAdds.size());
+        for (PendingAdd pending : pendingAdds) {
+            requests.add(pending.request());
+        }
+        List<PointResponse> responses = pointsService.addPointsGroup(requests);
+        for (int i = 0; i < pendingAdds.size(); i++) {
+            pendingAdds.get(i).future().complete(responses.get(i));
+        }
+    }
+
+    private record PendingAdd(AddPointsRequest request, CompletableFuture<PointResponse> future) {
+    }
+}
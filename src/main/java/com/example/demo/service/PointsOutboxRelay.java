@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.SchedulerLease;
+import com.example.demo.controller.dto.OutboxStatsResponse;
+import com.example.demo.mq.RocketMqProducer;
+import com.example.demo.repository.PointsOutboxRepository;
+import com.example.demo.repository.PointsOutboxRepository.OutboxLag;
+import com.example.demo.repository.PointsOutboxRepository.OutboxMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.rocketmq.client.producer.SendResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One relay publishes at a time: the instance holding the lease reads pending rows, sends
+// them, and marks them sent once the broker has acknowledged. No transaction or row lock is
+// held while waiting for the acks.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsOutboxRelay {
+
+    private static final int PURGE_CHUNK_SIZE = 5000;
+    private static final String LEASE_TASK = "points-outbox-relay";
+
+    private final PointsOutboxRepository pointsOutboxRepository;
+    private final RocketMqProducer rocketMqProducer;
+    private final SchedulerLease schedulerLease;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Instant lastSentAt;
+    // read by the gauges, so a scrape never queries MySQL
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+    private Counter sentMessages;
+    private Counter failedMessages;
+
+    @Value("${demo.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${demo.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${demo.outbox.retention-hours:24}")
+    private long retentionHours;
+
+    // renewed before every batch, so it must be longer than send-timeout-ms
+    @Value("${demo.outbox.lease-ms:30000}")
+    private long leaseMs;
+
+    @PostConstruct
+    public void start() {
+        sentMessages = Counter.builder("points.outbox.messages").tag("outcome", "sent").register(meterRegistry);
+        failedMessages = Counter.builder("points.outbox.messages").tag("outcome", "failed").register(meterRegistry);
+        Gauge.builder("points.outbox.pending", pending, AtomicLong::get).register(meterRegistry);
+        TimeGauge.builder("points.outbox.oldest.age", oldestPendingAgeMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${demo.outbox.poll-ms:200}")
+    public void relay() {
+        try {
+            int relayed;
+            do {
+                if (!schedulerLease.tryAcquire(LEASE_TASK, Duration.ofMillis(leaseMs))) {
+                    return;
+                }
+                relayed = relayBatch();
+            } while (relayed == batchSize);
+        } catch (Exception ex) {
+            // rows stay pending and are retried on the next poll, so delivery is at-least-once
+            failures.incrementAndGet();
+            log.warn("[PointsOutboxRelay] relay failed", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${demo.outbox.purge-ms:60000}")
+    public void purge() {
+        try {
+            Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+            int deleted;
+            do {
+                deleted = pointsOutboxRepository.purgeSent(cutoff, PURGE_CHUNK_SIZE);
+            } while (deleted == PURGE_CHUNK_SIZE);
+        } catch (Exception ex) {
+            log.warn("[PointsOutboxRelay] purge failed", ex);
+        }
+    }
+
+    // on every instance, not only the leader: a backlog shows even when no relay runs
+    @Scheduled(fixedDelayString = "${demo.outbox.lag-refresh-ms:5000}")
+    public void refreshLag() {
+        try {
+            OutboxLag lag = pointsOutboxRepository.findLag();
+            pending.set(lag.pending());
+            oldestPendingAgeMs.set(ageMs(lag));
+        } catch (Exception ex) {
+            log.warn("[PointsOutboxRelay] lag refresh failed", ex);
+        }
+    }
+
+    public OutboxStatsResponse stats() {
+        OutboxLag lag = pointsOutboxRepository.findLag();
+        OutboxStatsResponse response = new OutboxStatsResponse();
+        response.setPending(lag.pending());
+        response.setOldestPendingAgeMs(ageMs(lag));
+        response.setSent(sent.get());
+        response.setFailures(failures.get());
+        response.setLeader(schedulerLease.isHeld(LEASE_TASK));
+        response.setLastSentAt(lastSentAt);
+        return response;
+    }
+
+    private int relayBatch() {
+        List<OutboxMessage> messages = pointsOutboxRepository.findPending(batchSize);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        // the producer coalesces the rows into batch sends per topic and queue in id order
+        List<Long> ids = new ArrayList<>(messages.size());
+        List<CompletableFuture<SendResult>> sends = new ArrayList<>(messages.size());
+        for (OutboxMessage message : messages) {
+            sends.add(rocketMqProducer.sendAsync(message.topic(), message.key(), message.payload()));
+            ids.add(message.id());
+        }
+        try {
+            awaitSends(sends);
+        } catch (RuntimeException ex) {
+            failedMessages.increment(messages.size());
+            throw ex;
+        }
+        // a crash before this line resends the batch: delivery is at-least-once
+        pointsOutboxRepository.markSent(ids);
+        sent.addAndGet(messages.size());
+        sentMessages.increment(messages.size());
+        lastSentAt = Instant.now();
+        return messages.size();
+    }
+
+    private static long ageMs(OutboxLag lag) {
+        return lag.oldestCreatedAt() == null
+                ? 0L
+                : Math.max(0L, Duration.between(lag.oldestCreatedAt(), Instant.now()).toMillis());
+    }
+
+    private void awaitSends(List<CompletableFuture<SendResult>> sends) {
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                    .get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while sending outbox batch", ex);
+        } catch (ExecutionException | TimeoutException ex) {
+            throw new IllegalStateException("failed to send outbox batch size=" + sends.size(), ex);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.LeaderboardRedis;
+import com.example.demo.cache.LeaderboardRedis.ProjectedPoint;
+import com.example.demo.cache.LeaderboardRedis.WindowScore;
+import com.example.demo.cache.PointHistoryRedis;
+import com.example.demo.cache.UserTotalPointsNearCache;
+import com.example.demo.cache.UserTotalPointsRedis;
+import com.example.demo.event.PointsChangedEvent;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.model.points.entity.UserPoints;
+import com.example.demo.mq.event.UserPointsEvent;
+import com.example.demo.repository.PointsJdbcRepository;
+import com.example.demo.repository.UserPointsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// applies the user-points-topic stream to the Redis totals, leaderboards and near caches
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PointsProjection {
+
+    private static final String WRITE_MODE_INVALIDATE = "invalidate";
+
+    private final PointsJdbcRepository pointsJdbcRepository;
+    private final UserPointsRepository userPointsRepository;
+    private final UserTotalPointsRedis userTotalPointsRedis;
+    private final UserTotalPointsNearCache userTotalPointsNearCache;
+    private final LeaderboardRedis leaderboardRedis;
+    private final PointHistoryRedis pointHistoryRedis;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${demo.cache.total-write-mode:write-through}")
+    private String totalWriteMode;
+
+    // events must be in queue order; each user's events are folded into one update
+    public void apply(List<UserPointsEvent> events) {
+        Map<String, List<ProjectedPoint>> pointsByUser = new LinkedHashMap<>();
+        List<PointsChangedEvent> committed = new ArrayList<>();
+        Set<String> userIds = new LinkedHashSet<>();
+        for (UserPointsEvent event : events) {
+            if (UserPointsEvent.TYPE_DELETED.equals(event.getType())) {
+                // flush what came before the delete so the watermark reset is not overwritten
+                project(pointsByUser, committed, userIds);
+                applyDelete(event);
+                continue;
+            }
+            if (event.getVersion() == null || event.getTotal() == null) {
+                log.warn("[PointsProjection] skipping event without version pointId={}", event.getPointId());
+                continue;
+            }
+            pointsByUser.computeIfAbsent(event.getUserId(), userId -> new ArrayList<>())
+                    .add(new ProjectedPoint(event.getVersion(), event.getAmount(), event.getTotal(),
+                            event.getCreatedAt() == null ? Instant.now() : event.getCreatedAt()));
+            committed.add(new PointsChangedEvent(event.getUserId(), event.getPointId(), event.getAmount(),
+                    event.getReason(), event.getTotal(), event.getVersion()));
+            userIds.add(event.getUserId());
+        }
+        project(pointsByUser, committed, userIds);
+    }
+
+    private void project(
+            Map<String, List<ProjectedPoint>> pointsByUser,
+            List<PointsChangedEvent> committed,
+            Set<String> userIds) {
+        if (pointsByUser.isEmpty()) {
+            return;
+        }
+        for (List<ProjectedPoint> points : pointsByUser.values()) {
+            points.sort(Comparator.comparingLong(ProjectedPoint::version));
+        }
+        // totals are version-guarded, so replaying them is harmless
+        if (WRITE_MODE_INVALIDATE.equals(totalWriteMode)) {
+            userTotalPointsRedis.deleteTotals(userIds);
+        } else {
+            userTotalPointsRedis.applyCommitted(committed);
+        }
+        List<String> gaps = leaderboardRedis.project(pointsByUser);
+        for (String userId : gaps) {
+            resync(userId, pointsByUser.get(userId));
+        }
+        userTotalPointsNearCache.invalidate(userIds);
+        pointHistoryRedis.invalidate(userIds);
+        pointsByUser.clear();
+        committed.clear();
+        userIds.clear();
+    }
+
+    // events from before the tombstone had no version; they still drop the entries
+    private void applyDelete(UserPointsEvent event) {
+        Instant at = event.getCreatedAt() == null ? Instant.now() : event.getCreatedAt();
+        leaderboardRedis.removeUser(event.getUserId(), at);
+        if (event.getVersion() != null) {
+            userTotalPointsRedis.set(event.getUserId(), new CachedTotalPoints(0L, event.getVersion()));
+            leaderboardRedis.markApplied(event.getUserId(), event.getVersion());
+        } else {
+            userTotalPointsRedis.deleteTotal(event.getUserId());
+            leaderboardRedis.clearApplied(event.getUserId());
+        }
+        userTotalPointsNearCache.invalidate(List.of(event.getUserId()));
+        pointHistoryRedis.invalidate(List.of(event.getUserId()));
+    }
+
+    // a version is missing (first event seen for the user, or a send retried out of order):
+    // read the user's state from one MySQL snapshot and overwrite the Redis scores with it
+    private void resync(String userId, List<ProjectedPoint> points) {
+        Map<String, LeaderboardWindow> windowKeys = new LinkedHashMap<>();
+        List<Instant> instants = new ArrayList<>();
+        for (ProjectedPoint point : points) {
+            instants.add(point.createdAt());
+        }
+        instants.add(Instant.now());
+        Map<String, Instant> windowAt = new LinkedHashMap<>();
+        for (Instant at : instants) {
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                String key = window.key(at);
+                windowKeys.putIfAbsent(key, window);
+                windowAt.putIfAbsent(key, at);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            UserPoints current = userPointsRepository.findById(userId).orElse(null);
+            List<WindowScore> windows = new ArrayList<>(windowKeys.size());
+            for (Map.Entry<String, LeaderboardWindow> entry : windowKeys.entrySet()) {
+                LeaderboardWindow window = entry.getValue();
+                Instant at = windowAt.get(entry.getKey());
+                Long total = pointsJdbcRepository.findWindowTotals(
+                        List.of(userId), window.startInstant(at), window.endInstant(at)).get(userId);
+                windows.add(new WindowScore(entry.getKey(), window.ttl(), total));
+            }
+            // a tombstone keeps its version, so a deleted user is removed at the delete's version
+            leaderboardRedis.resync(
+                    userId,
+                    current == null ? 0L : current.getVersion(),
+                    current == null || current.getDeleted() ? null : current.getTotalPoints(),
+                    windows);
+        });
+        log.info("[PointsProjection] resynced userId={}", userId);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.UserIdBloomFilter;
+import com.example.demo.cache.UserTotalPointsNearCache;
+import com.example.demo.cache.UserTotalPointsRedis;
+import com.example.demo.controller.dto.ReconcileJobResponse;
+import com.example.demo.repository.PointsReconcileRepository;
+import com.example.demo.repository.PointsReconcileRepository.ChunkResult;
+import com.example.demo.repository.PointsReconcileRepository.JobProgress;
+import com.example.demo.repository.PointsReconcileRepository.Mismatch;
+import com.example.demo.repository.PointsReconcileRepository.ReconcileJob;
+import com.example.demo.repository.PointsReconcileRepository.ReconcileRange;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Checks user_points.total_points against the ledger: SUM(amount) from points plus the
+// archived total from points_archive_users. A job splits the user id
+// space into ranges; workers on every instance claim ranges and walk them in chunks of
+// chunk-users ids, checkpointing after each chunk, so a stopped worker's range is picked up
+// where it left off once its lease runs out. In repair mode mismatches are rewritten from
+// the ledger and the users' cached totals are dropped.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsReconcileRunner {
+
+    private final PointsReconcileRepository pointsReconcileRepository;
+    private final UserTotalPointsRedis userTotalPointsRedis;
+    private final UserTotalPointsNearCache userTotalPointsNearCache;
+    private final UserIdBloomFilter userIdBloomFilter;
+
+    @Value("${demo.reconcile.ranges:64}")
+    private int defaultRanges;
+
+    // per instance
+    @Value("${demo.reconcile.threads:4}")
+    private int threads;
+
+    @Value("${demo.reconcile.chunk-users:1000}")
+    private int chunkUsers;
+
+    @Value("${demo.reconcile.chunk-pause-ms:0}")
+    private long chunkPauseMs;
+
+    @Value("${demo.reconcile.lease-ms:60000}")
+    private long leaseMs;
+
+    private final AtomicInteger workers = new AtomicInteger();
+    private volatile boolean stopping;
+
+    public ReconcileJobResponse start(boolean repair, Integer ranges) {
+        if (pointsReconcileRepository.findRunningJob().isPresent()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "a reconcile job is already running");
+        }
+        int count = Math.max(1, Math.min(ranges == null ? defaultRanges : ranges, 4096));
+        long jobId = pointsReconcileRepository.createJob(repair, pointsReconcileRepository.findRangeBoundaries(count));
+        log.info("[PointsReconcileRunner][start] created jobId={} repair={} ranges={}", jobId, repair, count);
+        startWorkers();
+        return status(jobId, 0);
+    }
+
+    public ReconcileJobResponse status(long jobId, int mismatchLimit) {
+        ReconcileJob job = pointsReconcileRepository.findJob(jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "reconcile job not found"));
+        JobProgress progress = pointsReconcileRepository.findProgress(jobId);
+        ReconcileJobResponse response = new ReconcileJobResponse();
+        response.setId(job.id());
+        response.setRepair(job.repair());
+        response.setStatus(job.status());
+        response.setRangeCount(job.rangeCount());
+        response.setRangesDone(progress.rangesDone());
+        response.setCheckedUsers(progress.checkedUsers());
+        response.setMismatchedUsers(progress.mismatchedUsers());
+        response.setRepairedUsers(progress.repairedUsers());
+        response.setCreatedAt(job.createdAt());
+        response.setStartedAt(progress.startedAt());
+        response.setFinishedAt(job.finishedAt());
+        if (progress.startedAt() != null) {
+            Instant end = job.finishedAt() != null ? job.finishedAt() : Instant.now();
+            long elapsedMs = Math.max(1L, end.toEpochMilli() - progress.startedAt().toEpochMilli());
+            response.setUsersPerSecond(progress.checkedUsers() * 1000.0 / elapsedMs);
+        }
+        response.setMismatches(mismatchLimit > 0
+                ? pointsReconcileRepository.findMismatches(jobId, mismatchLimit)
+                : List.of());
+        return response;
+    }
+
+    // also resumes jobs left by restarted or stopped instances
+    @Scheduled(fixedDelayString = "${demo.reconcile.poll-ms:10000}")
+    public void startWorkers() {
+        while (!stopping) {
+            int active = workers.get();
+            if (active >= threads) {
+                return;
+            }
+            if (workers.compareAndSet(active, active + 1)) {
+                Thread.ofPlatform()
+                        .name("points-reconcile-" + active)
+                        .daemon(true)
+                        .start(this::runWorker);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+    }
+
+    private void runWorker() {
+        try {
+            Optional<ReconcileRange> range;
+            while (!stopping && (range = pointsReconcileRepository.claimRange(Instant.now().minusMillis(leaseMs))).isPresent()) {
+                if (!run(range.get())) {
+                    return;
+                }
+            }
+            pointsReconcileRepository.completeJobs();
+        } catch (Exception ex) {
+            // the range keeps its checkpoint and is reclaimed once its lease runs out
+            log.warn("[PointsReconcileRunner][runWorker] reconcile range failed", ex);
+        } finally {
+            workers.decrementAndGet();
+        }
+    }
+
+    private boolean run(ReconcileRange range) {
+        long started = System.nanoTime();
+        long checked = 0;
+        long mismatched = 0;
+        String after = range.checkpointUserId() != null ? range.checkpointUserId() : range.fromUserId();
+        ChunkResult chunk;
+        do {
+            if (stopping) {
+                return false;
+            }
+            chunk = pointsReconcileRepository.compareChunk(after, range.toUserId(), chunkUsers);
+            Map<String, Long> repaired = Map.of();
+            if (!chunk.mismatches().isEmpty()) {
+                if (range.repair()) {
+                    repaired = repair(chunk.mismatches());
+                }
+                pointsReconcileRepository.recordMismatches(range.jobId(), chunk.mismatches(), repaired.keySet());
+            }
+            // after the repair, so a chunk cut short by a crash is compared again
+            pointsReconcileRepository.checkpoint(
+                    range, chunk.next(), chunk.checkedUsers(), chunk.mismatches().size(), repaired.size());
+            checked += chunk.checkedUsers();
+            mismatched += chunk.mismatches().size();
+            after = chunk.next();
+            if (!chunk.rangeDone() && chunkPauseMs > 0) {
+                try {
+                    Thread.sleep(chunkPauseMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } while (!chunk.rangeDone());
+        pointsReconcileRepository.markRangeDone(range);
+        log.info("[PointsReconcileRunner][run] range done jobId={} range={} checked={} mismatched={} tookMs={}",
+                range.jobId(), range.rangeNo(), checked, mismatched,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return true;
+    }
+
+    // the repair re-reads both sides under row locks, so a user whose drift was a write
+    // in flight during the comparison is left as it is
+    private Map<String, Long> repair(List<Mismatch> mismatches) {
+        Map<String, Long> repaired = pointsReconcileRepository.repair(
+                mismatches.stream().map(Mismatch::userId).toList());
+        if (!repaired.isEmpty()) {
+            log.warn("[PointsReconcileRunner][repair] repaired totals users={}", repaired.size());
+            userTotalPointsRedis.deleteTotals(repaired.keySet());
+            userTotalPointsNearCache.invalidate(repaired.keySet());
+            userIdBloomFilter.addAll(repaired.keySet());
+        }
+        return repaired;
+    }
+}
@@ -1,88 +1,207 @@
 package com.example.demo.service;
 
 import com.example.demo.cache.LeaderboardRedis;
+import com.example.demo.cache.PointHistoryRedis;
 import com.example.demo.cache.RedisCacheLoadGuard;
+import com.example.demo.cache.UserIdBloomFilter;
+import com.example.demo.cache.UserTotalPointsNearCache;
 import com.example.demo.cache.UserTotalPointsRedis;
 import com.example.demo.controller.dto.AddPointsRequest;
+import com.example.demo.controller.dto.BatchAddPointsResponse;
+import com.example.demo.controller.dto.BatchItemResult;
+import com.example.demo.controller.dto.DeleteJobResponse;
 import com.example.demo.controller.dto.LeaderboardEntry;
+import com.example.demo.controller.dto.PointHistoryResponse;
 import com.example.demo.controller.dto.PointResponse;
 import com.example.demo.controller.dto.UpdateReasonResponse;
 import com.example.demo.controller.dto.TotalPointsResponse;
 import com.example.demo.controller.dto.UpdateReasonRequest;
+import com.example.demo.controller.dto.UserRankResponse;
 import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.model.points.cache.RedisKeys;
 import com.example.demo.model.points.entity.PointRecord;
 import com.example.demo.model.points.entity.UserPoints;
+import com.example.demo.event.PointsBatchAddedEvent;
 import com.example.demo.event.PointsChangedEvent;
 import com.example.demo.event.PointsDeletedEvent;
 import com.example.demo.repository.PointRecordRepository;
+import com.example.demo.repository.PointsArchiveRepository;
+import com.example.demo.repository.PointsDeleteJobRepository;
+import com.example.demo.repository.PointsJdbcRepository;
 import com.example.demo.repository.UserPointsRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PointsService {
 
+    private static final int LEADERBOARD_MAX_LIMIT = 100;
+    private static final int LEADERBOARD_MAX_NEIGHBOURS = 10;
+    private static final String LEADERBOARD_WINDOW_ALL = "all";
+    private static final int HISTORY_MAX_LIMIT = 100;
+    // column sizes of points.user_id and points.reason, in characters
+    private static final int USER_ID_MAX_LENGTH = 64;
+    private static final int REASON_MAX_LENGTH = 255;
+
     private final PointRecordRepository pointRecordRepository;
     private final UserPointsRepository userPointsRepository;
+    private final PointsJdbcRepository pointsJdbcRepository;
+    private final PointsDeleteJobRepository pointsDeleteJobRepository;
+    private final PointsArchiveRepository pointsArchiveRepository;
+    private final PointIdGenerator pointIdGenerator;
     private final UserTotalPointsRedis userTotalPointsRedis;
+    private final UserTotalPointsNearCache userTotalPointsNearCache;
     private final LeaderboardRedis leaderboardRedis;
     private final RedisCacheLoadGuard redisCacheLoadGuard;
+    private final PointHistoryRedis pointHistoryRedis;
+    private final UserIdBloomFilter userIdBloomFilter;
     private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
     @Value("${demo.cache.load-lock-ttl-ms:3000}")
     private long loadLockTtlMs;
 
-    @Value("${demo.cache.load-lock-retry:3}")
-    private int loadLockRetry;
+    @Value("${demo.cache.load-wait-ms:1000}")
+    private long loadWaitMs;
+
+    @Value("${demo.batch.max-size:5000}")
+    private int batchMaxSize;
 
-    @Value("${demo.cache.load-lock-sleep-ms:50}")
-    private long loadLockSleepMs;
+    @Value("${demo.batch.max-lookup-size:500}")
+    private int batchMaxLookupSize;
 
     @Transactional
     public PointResponse addPoints(AddPointsRequest request) {
         validateAddRequest(request);
 
-        PointRecord record = new PointRecord();
-        record.setUserId(request.getUserId());
-        record.setAmount(request.getAmount());
-        record.setReason(request.getReason());
-        PointRecord saved = pointRecordRepository.save(record);
-
+        // user_points first: the row is stamped with the version this update produced
         updateUserPoints(
                 request.getUserId(),
                 request.getAmount());
+        CachedTotalPoints committed = pointsJdbcRepository
+                .findTotals(List.of(request.getUserId()))
+                .get(request.getUserId());
+        PointRecord record = toRecord(request);
+        record.setUserVersion(committed.version());
+        // the history cache is dropped after commit, by PointsEventListener or the projection
+        PointRecord saved = pointRecordRepository.save(record);
+        userIdBloomFilter.addAll(List.of(request.getUserId()));
 
         eventPublisher.publishEvent(new PointsChangedEvent(
                 saved.getUserId(),
                 saved.getId(),
                 saved.getAmount(),
-                saved.getReason()));
+                saved.getReason(),
+                committed.total(),
+                committed.version()));
 
-        PointResponse response = new PointResponse();
-        response.setId(saved.getId());
-        response.setUserId(saved.getUserId());
-        response.setAmount(saved.getAmount());
-        response.setReason(saved.getReason());
-        response.setCreatedAt(saved.getCreatedAt() != null ? saved.getCreatedAt() : Instant.now());
+        return toPointResponse(saved);
+    }
+
+    @Transactional
+    public BatchAddPointsResponse addPointsBatch(List<AddPointsRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
+        }
+        if (requests.size() > batchMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "batch size exceeds limit of " + batchMaxSize);
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(requests.size());
+        List<BatchItemResult> accepted = new ArrayList<>();
+        List<PointRecord> records = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            AddPointsRequest request = requests.get(i);
+            BatchItemResult result = new BatchItemResult();
+            result.setIndex(i);
+            results.add(result);
+            if (request != null) {
+                result.setUserId(request.getUserId());
+            }
+            String error = validationError(request);
+            if (error != null) {
+                result.setStatus(BatchItemResult.STATUS_REJECTED);
+                result.setError(error);
+                continue;
+            }
+            records.add(toRecord(request));
+            accepted.add(result);
+        }
+
+        writeRecords(records);
+        for (int i = 0; i < records.size(); i++) {
+            BatchItemResult result = accepted.get(i);
+            result.setStatus(BatchItemResult.STATUS_CREATED);
+            result.setId(records.get(i).getId());
+        }
+
+        BatchAddPointsResponse response = new BatchAddPointsResponse();
+        response.setAccepted(records.size());
+        response.setRejected(requests.size() - records.size());
+        response.setResults(results);
         return response;
     }
 
+    @Transactional
+    public List<PointResponse> addPointsGroup(List<AddPointsRequest> requests) {
+        List<PointRecord> records = new ArrayList<>(requests.size());
+        for (AddPointsRequest request : requests) {
+            records.add(toRecord(request));
+        }
+        writeRecords(records);
+        List<PointResponse> responses = new ArrayList<>(records.size());
+        for (PointRecord record : records) {
+            responses.add(toPointResponse(record));
+        }
+        return responses;
+    }
+
     public TotalPointsResponse getTotalPoints(String userId) {
-        CachedTotalPoints cached = userTotalPointsRedis.getCached(userId);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // never had points: answer without creating a cache entry for the id
+        if (!userIdBloomFilter.mightContain(userId)) {
+            sample.stop(totalPointsTimer("bloom", "success"));
+            TotalPointsResponse response = new TotalPointsResponse();
+            response.setUserId(userId);
+            response.setTotal(0L);
+            return response;
+        }
+        CachedTotalPoints cached = userTotalPointsNearCache.get(userId);
         if (cached != null) {
+            sample.stop(totalPointsTimer("cache", "success"));
             TotalPointsResponse response = new TotalPointsResponse();
             response.setUserId(userId);
             response.setTotal(cached.total());
@@ -97,13 +216,15 @@ public class PointsService {
                     () -> userTotalPointsRedis.getCached(userId),
                     cachedValue -> userTotalPointsRedis.set(userId, cachedValue),
                     () -> loadFromDb(userId),
-                    loadLockRetry,
                     loadLockTtlMs,
-                    loadLockSleepMs);
+                    loadWaitMs);
         } catch (IllegalStateException ex) {
-            log.warn("[PointsService][getTotalPoints] cache wait timeout, fallback to db userId={}", userId);
-            loaded = loadFromDb(userId);
+            sample.stop(totalPointsTimer("load", "unavailable"));
+            log.warn("[PointsService][getTotalPoints] cache load unavailable userId={}", userId, ex);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "total points temporarily unavailable");
         }
+        sample.stop(totalPointsTimer("load", "success"));
+        userTotalPointsNearCache.put(userId, loaded);
         long total = loaded == null ? 0L : loaded.total();
 
         TotalPointsResponse response = new TotalPointsResponse();
@@ -112,33 +233,160 @@ public class PointsService {
         return response;
     }
 
-    public List<LeaderboardEntry> getLeaderboard() {
-        List<LeaderboardEntry> results = new ArrayList<>();
-        var entries = leaderboardRedis.getTop(10);
-        if (entries == null) {
-            return results;
+    public List<TotalPointsResponse> getTotals(List<String> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userIds is required");
         }
-        for (var entry : entries) {
-            if (entry == null || entry.getValue() == null) {
-                continue;
+        if (userIds.size() > batchMaxLookupSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "userIds exceeds limit of " + batchMaxLookupSize);
+        }
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            if (userId == null || userId.isBlank()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userIds must not contain blanks");
             }
-            LeaderboardEntry item = new LeaderboardEntry();
-            item.setUserId(entry.getValue());
-            double score = entry.getScore() == null ? 0.0 : entry.getScore();
-            item.setTotal((long) score);
-            results.add(item);
+            distinct.add(userId);
         }
-        return results;
+
+        Map<String, CachedTotalPoints> totals = new HashMap<>();
+        Set<String> known = new LinkedHashSet<>();
+        for (String userId : distinct) {
+            if (userIdBloomFilter.mightContain(userId)) {
+                known.add(userId);
+            } else {
+                totals.put(userId, new CachedTotalPoints(0L, 0L));
+            }
+        }
+        if (!known.isEmpty()) {
+            totals.putAll(userTotalPointsNearCache.getAll(known));
+        }
+        if (totals.size() < distinct.size()) {
+            List<String> misses = new ArrayList<>();
+            for (String userId : distinct) {
+                if (!totals.containsKey(userId)) {
+                    misses.add(userId);
+                }
+            }
+            Map<String, CachedTotalPoints> loaded = new HashMap<>();
+            for (UserPoints row : userPointsRepository.findAllById(misses)) {
+                loaded.put(row.getUserId(), new CachedTotalPoints(row.getTotalPoints(), row.getVersion()));
+            }
+            for (String userId : misses) {
+                loaded.putIfAbsent(userId, new CachedTotalPoints(0L, 0L));
+            }
+            userTotalPointsRedis.setAll(loaded);
+            userTotalPointsNearCache.putAll(loaded);
+            totals.putAll(loaded);
+        }
+
+        List<TotalPointsResponse> responses = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            TotalPointsResponse response = new TotalPointsResponse();
+            response.setUserId(userId);
+            response.setTotal(totals.get(userId).total());
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    public List<LeaderboardEntry> getLeaderboard(String window, long offset, int limit) {
+        if (offset < 0 || limit < 1 || limit > LEADERBOARD_MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset must be >= 0 and limit between 1 and " + LEADERBOARD_MAX_LIMIT);
+        }
+        return toLeaderboardEntries(leaderboardRedis.getRange(boardKey(window), offset, limit), offset);
+    }
+
+    public UserRankResponse getRank(String userId, String window, int neighbours) {
+        if (neighbours < 0 || neighbours > LEADERBOARD_MAX_NEIGHBOURS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "neighbours must be between 0 and " + LEADERBOARD_MAX_NEIGHBOURS);
+        }
+        String boardKey = boardKey(window);
+        Long rank = leaderboardRedis.getRank(boardKey, userId);
+        Double score = leaderboardRedis.getScore(boardKey, userId);
+        if (rank == null || score == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user is not on the leaderboard");
+        }
+        long from = Math.max(0, rank - neighbours);
+        int count = (int) (rank - from) + neighbours + 1;
+
+        UserRankResponse response = new UserRankResponse();
+        response.setUserId(userId);
+        response.setRank(rank + 1);
+        response.setTotal(score.longValue());
+        response.setNeighbours(toLeaderboardEntries(leaderboardRedis.getRange(boardKey, from, count), from));
+        return response;
+    }
+
+    // keyset pagination on (user_id, id); the first page comes from the Redis list when cached
+    public PointHistoryResponse getHistory(String userId, Long cursor, int limit) {
+        if (limit < 1 || limit > HISTORY_MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + HISTORY_MAX_LIMIT);
+        }
+        List<PointResponse> items = null;
+        boolean firstPage = cursor == null && limit <= pointHistoryRedis.getCacheSize();
+        if (firstPage) {
+            items = pointHistoryRedis.getRecent(userId, limit);
+        }
+        if (items == null) {
+            if (firstPage) {
+                List<PointResponse> recent = pointsJdbcRepository.findHistory(
+                        userId, null, pointHistoryRedis.getCacheSize());
+                pointHistoryRedis.store(userId, recent);
+                items = recent.subList(0, Math.min(limit, recent.size()));
+            } else {
+                items = pointsJdbcRepository.findHistory(userId, cursor, limit);
+            }
+        }
+
+        PointHistoryResponse response = new PointHistoryResponse();
+        response.setUserId(userId);
+        response.setItems(items);
+        response.setNextCursor(items.size() < limit ? null : items.get(items.size() - 1).getId());
+        return response;
+    }
+
+    // newline-delimited JSON, written row by row as the result set is read
+    public StreamingResponseBody exportHistory(String userId) {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                pointsJdbcRepository.streamHistory(userId, row -> {
+                    try {
+                        writer.writeValue(generator, row);
+                        generator.writeRaw('\n');
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        };
     }
 
+    @Transactional
     public UpdateReasonResponse updateReason(Long id, UpdateReasonRequest request) {
         if (request == null || request.getReason() == null || request.getReason().isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "reason is required");
         }
-        PointRecord record = pointRecordRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "point record not found"));
+        if (characters(request.getReason()) > REASON_MAX_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "reason must be at most " + REASON_MAX_LENGTH + " characters");
+        }
+        PointRecord record = pointRecordRepository.findById(id).orElse(null);
+        if (record == null) {
+            // archived rows are read-only
+            if (pointsArchiveRepository.isArchived(id)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "point record is archived");
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "point record not found");
+        }
         record.setReason(request.getReason());
         PointRecord saved = pointRecordRepository.save(record);
+        invalidateHistoryAfterCommit(saved.getUserId());
 
         UpdateReasonResponse response = new UpdateReasonResponse();
         response.setId(saved.getId());
@@ -149,35 +397,203 @@ public class PointsService {
         return response;
     }
 
+    // The total goes to 0 and the user leaves the leaderboards on commit; the points rows are
+    // removed afterwards in chunks by PointsDeleteJobRunner. The tombstone's version is the
+    // fence: every row written before it carries a lower user_version, every row added after
+    // it a higher one. Ids are no fence, an instance with a lagging clock issues lower ones.
     @Transactional
-    public void deleteUserPoints(String userId) {
-        pointRecordRepository.deleteByUserId(userId);
-        userPointsRepository.deleteById(userId);
-        eventPublisher.publishEvent(new PointsDeletedEvent(userId));
+    public DeleteJobResponse deleteUserPoints(String userId) {
+        Long version = null;
+        if (userPointsRepository.markDeleted(userId) > 0) {
+            version = pointsJdbcRepository.findTotals(List.of(userId)).get(userId).version();
+        }
+        // no user_points row: only rows from before user_version existed can be left
+        long jobId = pointsDeleteJobRepository.create(userId, version == null ? 0L : version - 1);
+        eventPublisher.publishEvent(new PointsDeletedEvent(userId, version));
+
+        DeleteJobResponse response = new DeleteJobResponse();
+        response.setId(jobId);
+        response.setUserId(userId);
+        response.setStatus(PointsDeleteJobRepository.STATUS_PENDING);
+        response.setCreatedAt(Instant.now());
+        return response;
     }
 
-    private void validateAddRequest(AddPointsRequest request) {
+    public DeleteJobResponse getDeleteJob(long jobId) {
+        PointsDeleteJobRepository.DeleteJob job = pointsDeleteJobRepository.findById(jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "delete job not found"));
+        DeleteJobResponse response = new DeleteJobResponse();
+        response.setId(job.id());
+        response.setUserId(job.userId());
+        response.setStatus(job.status());
+        response.setDeletedRows(job.deletedRows());
+        response.setCreatedAt(job.createdAt());
+        response.setStartedAt(job.startedAt());
+        response.setFinishedAt(job.finishedAt());
+        if (job.startedAt() != null) {
+            Instant end = job.finishedAt() != null ? job.finishedAt() : Instant.now();
+            long elapsedMs = Math.max(1L, end.toEpochMilli() - job.startedAt().toEpochMilli());
+            response.setRowsPerSecond(job.deletedRows() * 1000.0 / elapsedMs);
+        }
+        return response;
+    }
+
+    void validateAddRequest(AddPointsRequest request) {
+        String error = validationError(request);
+        if (error != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+        }
+    }
+
+    private String validationError(AddPointsRequest request) {
         if (request == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
+            return "request body is required";
         }
         if (request.getUserId() == null || request.getUserId().isBlank()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId is required");
+            return "userId is required";
+        }
+        if (characters(request.getUserId()) > USER_ID_MAX_LENGTH) {
+            return "userId must be at most " + USER_ID_MAX_LENGTH + " characters";
         }
         if (request.getAmount() == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "amount is required");
+            return "amount is required";
         }
         if (request.getReason() == null || request.getReason().isBlank()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "reason is required");
+            return "reason is required";
+        }
+        if (characters(request.getReason()) > REASON_MAX_LENGTH) {
+            return "reason must be at most " + REASON_MAX_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    // utf8mb4 columns count code points, not UTF-16 chars
+    private static int characters(String value) {
+        return value.codePointCount(0, value.length());
+    }
+
+    private String boardKey(String window) {
+        if (window == null || LEADERBOARD_WINDOW_ALL.equalsIgnoreCase(window)) {
+            return RedisKeys.LEADERBOARD_KEY;
+        }
+        LeaderboardWindow resolved = LeaderboardWindow.from(window);
+        if (resolved == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "window must be one of all, daily, weekly, monthly");
+        }
+        return resolved.key(Instant.now());
+    }
+
+    private List<LeaderboardEntry> toLeaderboardEntries(
+            Set<ZSetOperations.TypedTuple<String>> entries, long offset) {
+        List<LeaderboardEntry> results = new ArrayList<>();
+        if (entries == null) {
+            return results;
         }
+        long rank = offset;
+        for (var entry : entries) {
+            rank++;
+            if (entry == null || entry.getValue() == null) {
+                continue;
+            }
+            LeaderboardEntry item = new LeaderboardEntry();
+            item.setRank(rank);
+            item.setUserId(entry.getValue());
+            double score = entry.getScore() == null ? 0.0 : entry.getScore();
+            item.setTotal((long) score);
+            results.add(item);
+        }
+        return results;
+    }
+
+    private PointRecord toRecord(AddPointsRequest request) {
+        PointRecord record = new PointRecord();
+        record.setId(pointIdGenerator.nextId());
+        record.setUserId(request.getUserId());
+        record.setAmount(request.getAmount());
+        record.setReason(request.getReason());
+        return record;
+    }
+
+    private void writeRecords(List<PointRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        // sorted by user id, so concurrent batches lock user_points rows in the same order
+        Map<String, PointsJdbcRepository.UserDelta> deltas = new TreeMap<>();
+        for (PointRecord record : records) {
+            deltas.merge(
+                    record.getUserId(),
+                    new PointsJdbcRepository.UserDelta(record.getAmount(), 1),
+                    PointsJdbcRepository.UserDelta::plus);
+        }
+        pointsJdbcRepository.upsertAddPoints(deltas);
+
+        // total and version after each record, as if the records had been added one by one
+        Map<String, CachedTotalPoints> committed = pointsJdbcRepository.findTotals(deltas.keySet());
+        Map<String, long[]> running = new HashMap<>();
+        for (Map.Entry<String, PointsJdbcRepository.UserDelta> delta : deltas.entrySet()) {
+            CachedTotalPoints after = committed.get(delta.getKey());
+            running.put(delta.getKey(), new long[] {
+                    after.total() - delta.getValue().amount(),
+                    after.version() - delta.getValue().count()});
+        }
+        List<PointsChangedEvent> changes = new ArrayList<>(records.size());
+        for (PointRecord record : records) {
+            long[] totalAndVersion = running.get(record.getUserId());
+            totalAndVersion[0] += record.getAmount();
+            totalAndVersion[1]++;
+            record.setUserVersion(totalAndVersion[1]);
+            changes.add(new PointsChangedEvent(
+                    record.getUserId(),
+                    record.getId(),
+                    record.getAmount(),
+                    record.getReason(),
+                    totalAndVersion[0],
+                    totalAndVersion[1]));
+        }
+        // after the upsert, so each row carries its user_version
+        pointsJdbcRepository.insertAll(records);
+        userIdBloomFilter.addAll(deltas.keySet());
+        eventPublisher.publishEvent(new PointsBatchAddedEvent(changes));
+    }
+
+    private PointResponse toPointResponse(PointRecord record) {
+        PointResponse response = new PointResponse();
+        response.setId(record.getId());
+        response.setUserId(record.getUserId());
+        response.setAmount(record.getAmount());
+        response.setReason(record.getReason());
+        response.setCreatedAt(record.getCreatedAt() != null ? record.getCreatedAt() : Instant.now());
+        return response;
+    }
+
+    // source=cache counts near-cache and Redis hits, so its share of all requests is the hit ratio;
+    // source=bloom counts ids answered as unknown before any cache access
+    private Timer totalPointsTimer(String source, String outcome) {
+        return Timer.builder("points.total.get")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     private CachedTotalPoints loadFromDb(String userId) {
         Optional<UserPoints> userPoints = userPointsRepository.findById(userId);
         if (userPoints.isEmpty()) {
-            return new CachedTotalPoints(0L);
+            return new CachedTotalPoints(0L, 0L);
         }
         UserPoints data = userPoints.get();
-        return new CachedTotalPoints(data.getTotalPoints());
+        return new CachedTotalPoints(data.getTotalPoints(), data.getVersion());
+    }
+
+    // before the commit, a concurrent reader could still load the old rows and store them back
+    private void invalidateHistoryAfterCommit(String userId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pointHistoryRedis.invalidate(List.of(userId));
+            }
+        });
     }
 
     private void updateUserPoints(String userId, long amount) {
@@ -0,0 +1,80 @@
+package com.example.demo.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Time-ordered 64-bit ids: 41 bits of milliseconds since EPOCH_MS, 10 bits of node id and
+// 12 bits of sequence, so up to 4096 ids per millisecond per node. Ids from one node are
+// strictly increasing; across nodes they are ordered by millisecond, which keeps inserts
+// at the right-hand end of the clustered index. The last millisecond and sequence are
+// one AtomicLong advanced by CAS: no monitor is held, so a virtual thread waiting for the
+// next millisecond never pins its carrier.
+public final class SnowflakeIdGenerator {
+
+    // 2025-01-01T00:00:00Z; 41 bits of milliseconds run out in 2094
+    public static final long EPOCH_MS = 1735689600000L;
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODES = 1 << NODE_BITS;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // a small step back (NTP slew) reuses the last millisecond; anything larger is an error
+    private static final long MAX_BACKWARDS_MS = 5;
+
+    private final int nodeId;
+    private final long nodeBits;
+    private final LongSupplier clock;
+    // last millisecond << SEQUENCE_BITS | last sequence; -1 before the first id
+    private final AtomicLong state = new AtomicLong(-1);
+
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("nodeId must be in [0, " + MAX_NODES + ")");
+        }
+        this.nodeId = nodeId;
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long lastMs = last >> SEQUENCE_BITS;
+            long now = clock.getAsLong();
+            if (now < lastMs) {
+                if (lastMs - now > MAX_BACKWARDS_MS) {
+                    throw new IllegalStateException("clock moved backwards by " + (lastMs - now) + " ms");
+                }
+                now = lastMs;
+            }
+            long next;
+            if (now == lastMs) {
+                long sequence = (last & SEQUENCE_MASK) + 1;
+                if (sequence > SEQUENCE_MASK) {
+                    // the sequence ran out for this millisecond; a virtual thread gives up its carrier
+                    Thread.yield();
+                    continue;
+                }
+                next = last + 1;
+            } else {
+                next = now << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(last, next)) {
+                return ((now - EPOCH_MS) << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    // creation time of an id, in epoch milliseconds
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MS;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.UserIdBloomFilter;
+import com.example.demo.repository.PointsJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Loads the user id filter from user_points at startup and rebuilds it periodically,
+// which is what removes deleted users: a Bloom filter cannot forget an id.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserIdBloomFilterRebuilder {
+
+    private static final int CHUNK_SIZE = 10000;
+
+    private final UserIdBloomFilter userIdBloomFilter;
+    private final PointsJdbcRepository pointsJdbcRepository;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private long lastCount;
+
+    // off the startup thread: until it completes the filter lets every id through
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    // a missed notification or a failed publish asks for a rebuild ahead of schedule
+    @Scheduled(fixedDelayString = "${demo.bloom.rebuild-check-ms:5000}")
+    public void rebuildIfRequested() {
+        // a rebuild already running may have read past the missed ids: the request waits for the next one
+        if (!running.get() && userIdBloomFilter.takeRebuildRequest()) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(
+            fixedDelayString = "${demo.bloom.rebuild-ms:21600000}",
+            initialDelayString = "${demo.bloom.rebuild-ms:21600000}")
+    public void rebuild() {
+        if (!userIdBloomFilter.isEnabled() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            userIdBloomFilter.beginRebuild(lastCount);
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            pointsJdbcRepository.streamUserIds(userId -> {
+                chunk.add(userId);
+                if (chunk.size() == CHUNK_SIZE) {
+                    userIdBloomFilter.addToRebuild(chunk);
+                    chunk.clear();
+                }
+            });
+            userIdBloomFilter.addToRebuild(chunk);
+            lastCount = userIdBloomFilter.completeRebuild();
+            log.info("[UserIdBloomFilterRebuilder][rebuild] loaded ids={} elapsedMs={}",
+                    lastCount, System.currentTimeMillis() - startedAt);
+        } catch (Exception ex) {
+            userIdBloomFilter.abortRebuild();
+            log.error("[UserIdBloomFilterRebuilder][rebuild] rebuild failed", ex);
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    private static final double FPP = 0.01;
+    private static final int PROBES = 200_000;
+
+    @Test
+    void addedIdsAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(1_000, FPP);
+        for (int i = 0; i < 50_000; i++) {
+            filter.put("user-" + i);
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(filter.mightContain("user-" + i)).as("user-%d", i).isTrue();
+        }
+    }
+
+    @Test
+    void staysUnderTheRateAtExpectedInsertions() {
+        BloomFilter filter = new BloomFilter(10_000, FPP);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user-" + i);
+        }
+
+        assertThat(filter.bitSize()).isEqualTo(BloomFilter.optimalBits(10_000, FPP / 2));
+        assertThat(falsePositiveRate(filter)).isLessThanOrEqualTo(FPP);
+    }
+
+    @Test
+    void growsPastExpectedInsertionsAndStaysUnderTheRate() {
+        BloomFilter filter = new BloomFilter(10_000, FPP);
+        long initialBits = filter.bitSize();
+        for (int i = 0; i < 150_000; i++) {
+            filter.put("user-" + i);
+        }
+
+        // 10k + 20k + 40k + 80k: four slices
+        assertThat(filter.bitSize()).isGreaterThan(initialBits * 10);
+        // an id that hits a false positive is not counted
+        assertThat(filter.approximateCount()).isBetween((long) (150_000 * (1 - FPP)), 150_000L);
+        assertThat(falsePositiveRate(filter)).isLessThanOrEqualTo(FPP);
+    }
+
+    @Test
+    void repeatedPutsAreNotCounted() {
+        BloomFilter filter = new BloomFilter(100, FPP);
+
+        assertThat(filter.put("user-1")).isTrue();
+        assertThat(filter.put("user-1")).isFalse();
+        assertThat(filter.approximateCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsInvalidSizing() {
+        assertThatThrownBy(() -> new BloomFilter(0, FPP)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(100, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(100, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // ids that were never added
+    private static double falsePositiveRate(BloomFilter filter) {
+        int hits = 0;
+        for (int i = 0; i < PROBES; i++) {
+            if (filter.mightContain("other-" + i)) {
+                hits++;
+            }
+        }
+        return (double) hits / PROBES;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.demo.cache;
+
+import com.example.demo.cache.LeaderboardRedis.ProjectedPoint;
+import com.example.demo.cache.LeaderboardRedis.WindowScore;
+import com.example.demo.model.points.cache.LeaderboardWindow;
+import com.example.demo.model.points.cache.RedisKeys;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the projection and resync scripts against a real redis-server.
+class LeaderboardRedisTest {
+
+    private static final Instant AT = Instant.parse("2026-03-10T12:00:00Z");
+
+    private static EmbeddedRedis redis;
+
+    private LeaderboardRedis leaderboard;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        leaderboard = new LeaderboardRedis(redis.template());
+        ReflectionTestUtils.setField(leaderboard, "appliedTtlSeconds", 600L);
+    }
+
+    @Test
+    void appliesVersionsInOrderAndSkipsRedeliveries() {
+        List<String> gaps = leaderboard.project(Map.of("u1", List.of(point(1, 10, 10), point(2, 5, 15))));
+
+        assertThat(gaps).isEmpty();
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(15.0);
+        assertThat(score(LeaderboardWindow.DAILY.key(AT), "u1")).isEqualTo(15.0);
+        assertThat(applied("u1")).isEqualTo("2");
+        assertThat(leaderboard.getVersion()).isEqualTo(1);
+
+        // a redelivered point must not be added to the windows twice
+        gaps = leaderboard.project(Map.of("u1", List.of(point(2, 5, 15))));
+        assertThat(gaps).isEmpty();
+        assertThat(score(LeaderboardWindow.WEEKLY.key(AT), "u1")).isEqualTo(15.0);
+        assertThat(leaderboard.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void missingVersionIsReturnedAsAGap() {
+        leaderboard.project(Map.of("u1", List.of(point(1, 10, 10))));
+
+        List<String> gaps = leaderboard.project(Map.of("u1", List.of(point(3, 5, 20), point(4, 1, 21))));
+
+        assertThat(gaps).containsExactly("u1");
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(10.0);
+        assertThat(applied("u1")).isEqualTo("1");
+    }
+
+    @Test
+    void watermarksAreKeptPerUser() {
+        leaderboard.project(Map.of("u2", List.of(point(1, 7, 7))));
+        Map<String, List<ProjectedPoint>> points = new LinkedHashMap<>();
+        points.put("u1", List.of(point(1, 10, 10)));
+        points.put("u2", List.of(point(2, 3, 10)));
+        points.put("u3", List.of(point(5, 1, 9)));
+
+        List<String> gaps = leaderboard.project(points);
+
+        assertThat(gaps).containsExactly("u3");
+        assertThat(applied("u1")).isEqualTo("1");
+        assertThat(applied("u2")).isEqualTo("2");
+        assertThat(applied("u3")).isNull();
+        assertThat(score(LeaderboardWindow.MONTHLY.key(AT), "u2")).isEqualTo(10.0);
+    }
+
+    @Test
+    void watermarkExpiresWithTheCachedTotals() {
+        leaderboard.project(Map.of("u1", List.of(point(1, 10, 10))));
+
+        Long ttl = redis.template().getExpire(RedisKeys.PROJECTION_APPLIED + "u1");
+        assertThat(ttl).isBetween(1L, 600L);
+    }
+
+    @Test
+    void resyncOverwritesScoresUnlessTheWatermarkIsNewer() {
+        leaderboard.project(Map.of("u1", List.of(point(1, 10, 10))));
+        String daily = LeaderboardWindow.DAILY.key(AT);
+
+        leaderboard.resync("u1", 4, 40L, List.of(new WindowScore(daily, LeaderboardWindow.DAILY.ttl(), 25L)));
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(40.0);
+        assertThat(score(daily, "u1")).isEqualTo(25.0);
+        assertThat(applied("u1")).isEqualTo("4");
+        assertThat(redis.template().getExpire(RedisKeys.PROJECTION_APPLIED + "u1")).isBetween(1L, 600L);
+
+        // a resync that read MySQL before the last applied point is stale
+        leaderboard.resync("u1", 3, 30L, List.of(new WindowScore(daily, LeaderboardWindow.DAILY.ttl(), null)));
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(40.0);
+        assertThat(score(daily, "u1")).isEqualTo(25.0);
+
+        leaderboard.resync("u1", 5, null, List.of(new WindowScore(daily, LeaderboardWindow.DAILY.ttl(), null)));
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isNull();
+        assertThat(score(daily, "u1")).isNull();
+    }
+
+    @Test
+    void clearedWatermarkStartsOver() {
+        leaderboard.project(Map.of("u1", List.of(point(1, 10, 10))));
+
+        leaderboard.clearApplied("u1");
+
+        assertThat(applied("u1")).isNull();
+        assertThat(leaderboard.project(Map.of("u1", List.of(point(1, 4, 4))))).isEmpty();
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(4.0);
+    }
+
+    @Test
+    void deleteWatermarkSkipsOlderEventsAndAcceptsTheNextAdd() {
+        leaderboard.project(Map.of("u1", List.of(point(1, 10, 10), point(2, 5, 15))));
+
+        // the tombstone took version 3
+        leaderboard.markApplied("u1", 3);
+
+        assertThat(leaderboard.project(Map.of("u1", List.of(point(2, 5, 15))))).isEmpty();
+        assertThat(applied("u1")).isEqualTo("3");
+        assertThat(leaderboard.project(Map.of("u1", List.of(point(4, 7, 7))))).isEmpty();
+        assertThat(score(RedisKeys.LEADERBOARD_KEY, "u1")).isEqualTo(7.0);
+        assertThat(applied("u1")).isEqualTo("4");
+    }
+
+    private static ProjectedPoint point(long version, long amount, long total) {
+        return new ProjectedPoint(version, amount, total, AT);
+    }
+
+    private Double score(String boardKey, String userId) {
+        return leaderboard.getScore(boardKey, userId);
+    }
+
+    private static String applied(String userId) {
+        return redis.template().opsForValue().get(RedisKeys.PROJECTION_APPLIED + userId);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TotalPointsCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void roundTrips() {
+        for (CachedTotalPoints cached : new CachedTotalPoints[]{
+                new CachedTotalPoints(0, 0),
+                new CachedTotalPoints(1250, 37),
+                new CachedTotalPoints(-40, 3),
+                new CachedTotalPoints(Long.MAX_VALUE, Long.MAX_VALUE),
+                new CachedTotalPoints(Long.MIN_VALUE, 1)}) {
+            assertThat(TotalPointsCodec.decode(TotalPointsCodec.encode(cached))).isEqualTo(cached);
+        }
+    }
+
+    @Test
+    void encodesAsDecimalPair() {
+        assertThat(TotalPointsCodec.encode(new CachedTotalPoints(1250, 37))).isEqualTo("1250:37");
+    }
+
+    @Test
+    void rejectsMalformedValues() {
+        assertThat(TotalPointsCodec.decode(null)).isNull();
+        assertThat(TotalPointsCodec.decode("")).isNull();
+        assertThat(TotalPointsCodec.decode("1250")).isNull();
+        assertThat(TotalPointsCodec.decode(":37")).isNull();
+        assertThat(TotalPointsCodec.decode("1250:")).isNull();
+        assertThat(TotalPointsCodec.decode("a:1")).isNull();
+        assertThat(TotalPointsCodec.decode("\"{\\\"total\\\":5}\"")).isNull();
+    }
+
+    @Test
+    void expiringValuesDecodeOnlyBeforeTheirExpiry() {
+        assertThat(TotalPointsCodec.decodeExpiring("1250:37:1000", 999)).isEqualTo(new CachedTotalPoints(1250, 37));
+        assertThat(TotalPointsCodec.decodeExpiring("-40:3:1000", 999)).isEqualTo(new CachedTotalPoints(-40, 3));
+        assertThat(TotalPointsCodec.decodeExpiring("1250:37:1000", 1000)).isNull();
+        // written without an expiry
+        assertThat(TotalPointsCodec.decodeExpiring("1250:37", 1)).isNull();
+        assertThat(TotalPointsCodec.decodeExpiring(null, 1)).isNull();
+        assertThat(TotalPointsCodec.decodeExpiring("1250:37:", 1)).isNull();
+        assertThat(TotalPointsCodec.decodeExpiring("a:37:1000", 1)).isNull();
+    }
+
+    @Test
+    void decodesLegacyJsonAsVersionZero() {
+        assertThat(TotalPointsCodec.decodeLegacy("\"{\\\"total\\\":5}\"", objectMapper))
+                .isEqualTo(new CachedTotalPoints(5, 0));
+        assertThat(TotalPointsCodec.decodeLegacy("5:1", objectMapper)).isNull();
+        assertThat(TotalPointsCodec.decodeLegacy("\"{\\\"other\\\":5}\"", objectMapper)).isNull();
+        assertThat(TotalPointsCodec.decodeLegacy("\"not json\"", objectMapper)).isNull();
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.demo.cache;
+
+import com.example.demo.event.PointsChangedEvent;
+import com.example.demo.model.points.cache.CachedTotalPoints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the version-guard scripts against a real redis-server, for both layouts.
+class UserTotalPointsRedisTest {
+
+    private static EmbeddedRedis redis;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redis.close();
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.flushAll();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {UserTotalPointsRedis.LAYOUT_KEY, UserTotalPointsRedis.LAYOUT_BUCKETED})
+    void cacheFillNeverReplacesANewerVersion(String layout) {
+        UserTotalPointsRedis totals = totals(layout);
+
+        totals.set("u1", new CachedTotalPoints(50, 5));
+        totals.set("u1", new CachedTotalPoints(30, 3));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(50, 5));
+
+        totals.set("u1", new CachedTotalPoints(70, 7));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(70, 7));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {UserTotalPointsRedis.LAYOUT_KEY, UserTotalPointsRedis.LAYOUT_BUCKETED})
+    void committedWriteAppliesOnlyNewerVersionsOfCachedUsers(String layout) {
+        UserTotalPointsRedis totals = totals(layout);
+        totals.set("u1", new CachedTotalPoints(50, 5));
+
+        totals.applyCommitted(List.of(change("u1", 60, 6), change("u2", 10, 1)));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(60, 6));
+        // not cached: the next read loads it from MySQL
+        assertThat(totals.getCached("u2")).isNull();
+
+        // a late write-through of an older or the same version is ignored
+        totals.applyCommitted(List.of(change("u1", 55, 5)));
+        totals.applyCommitted(List.of(change("u1", 99, 6)));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(60, 6));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {UserTotalPointsRedis.LAYOUT_KEY, UserTotalPointsRedis.LAYOUT_BUCKETED})
+    void committedWritesInOneCallKeepTheNewestVersionPerUser(String layout) {
+        UserTotalPointsRedis totals = totals(layout);
+        totals.set("u1", new CachedTotalPoints(0, 1));
+
+        totals.applyCommitted(List.of(change("u1", 30, 3), change("u1", 20, 2)));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(30, 3));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {UserTotalPointsRedis.LAYOUT_KEY, UserTotalPointsRedis.LAYOUT_BUCKETED})
+    void unparsableEntryIsDroppedByACommittedWrite(String layout) {
+        UserTotalPointsRedis totals = totals(layout);
+        if (UserTotalPointsRedis.LAYOUT_KEY.equals(layout)) {
+            redis.template().opsForValue().set(totals.getKey("u1"), "garbage");
+        } else {
+            redis.template().opsForHash().put(totals.getBucketKey("u1"), "u1", "garbage");
+        }
+
+        totals.applyCommitted(List.of(change("u1", 10, 1)));
+        assertThat(totals.getCached("u1")).isNull();
+        assertThat(totals.getCachedAll(List.of("u1"))).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {UserTotalPointsRedis.LAYOUT_KEY, UserTotalPointsRedis.LAYOUT_BUCKETED})
+    void cacheFillKeepsTheTtl(String layout) {
+        UserTotalPointsRedis totals = totals(layout);
+        totals.setAll(Map.of("u1", new CachedTotalPoints(10, 1)));
+        totals.applyCommitted(List.of(change("u1", 20, 2)));
+
+        String key = UserTotalPointsRedis.LAYOUT_KEY.equals(layout) ? totals.getKey("u1") : totals.getBucketKey("u1");
+        assertThat(redis.template().getExpire(key)).isBetween(1L, 600L);
+    }
+
+    @Test
+    void expiredBucketFieldIsMissingAndAnyFillReplacesIt() {
+        UserTotalPointsRedis totals = totals(UserTotalPointsRedis.LAYOUT_BUCKETED);
+        String bucket = totals.getBucketKey("u1");
+        redis.template().opsForHash().put(bucket, "u1", "50:5:1");
+
+        assertThat(totals.getCached("u1")).isNull();
+        assertThat(totals.getCachedAll(List.of("u1"))).isEmpty();
+
+        totals.set("u1", new CachedTotalPoints(30, 3));
+        assertThat(totals.getCached("u1")).isEqualTo(new CachedTotalPoints(30, 3));
+    }
+
+    @Test
+    void committedWriteDropsAnExpiredBucketField() {
+        UserTotalPointsRedis totals = totals(UserTotalPointsRedis.LAYOUT_BUCKETED);
+        String bucket = totals.getBucketKey("u1");
+        redis.template().opsForHash().put(bucket, "u1", "50:5:1");
+
+        totals.applyCommitted(List.of(change("u1", 60, 6)));
+        assertThat(redis.template().opsForHash().hasKey(bucket, "u1")).isFalse();
+    }
+
+    @Test
+    void committedWriteKeepsTheFieldExpiryWhileFillsRenewIt() {
+        UserTotalPointsRedis totals = totals(UserTotalPointsRedis.LAYOUT_BUCKETED);
+        String bucket = totals.getBucketKey("u1");
+        long expiresAt = System.currentTimeMillis() / 1000 + 5;
+        redis.template().opsForHash().put(bucket, "u1", "10:1:" + expiresAt);
+
+        totals.applyCommitted(List.of(change("u1", 20, 2)));
+        assertThat(redis.template().opsForHash().get(bucket, "u1")).isEqualTo("20:2:" + expiresAt);
+
+        totals.set("u1", new CachedTotalPoints(30, 3));
+        String filled = (String) redis.template().opsForHash().get(bucket, "u1");
+        assertThat(filled).startsWith("30:3:");
+        assertThat(Long.parseLong(filled.substring("30:3:".length()))).isGreaterThan(expiresAt + 500);
+    }
+
+    @Test
+    void fillSweepsExpiredFieldsOfItsBucket() {
+        UserTotalPointsRedis totals = totals(UserTotalPointsRedis.LAYOUT_BUCKETED);
+        String bucket = totals.getBucketKey("u1");
+        long live = System.currentTimeMillis() / 1000 + 600;
+        redis.template().opsForHash().put(bucket, "gone", "50:5:1");
+        redis.template().opsForHash().put(bucket, "unversioned", "50:5");
+        redis.template().opsForHash().put(bucket, "kept", "50:5:" + live);
+
+        totals.set("u1", new CachedTotalPoints(30, 3));
+
+        assertThat(redis.template().opsForHash().keys(bucket)).containsExactlyInAnyOrder("u1", "kept");
+    }
+
+    private static UserTotalPointsRedis totals(String layout) {
+        UserTotalPointsRedis totals = new UserTotalPointsRedis(redis.template(), new ObjectMapper());
+        ReflectionTestUtils.setField(totals, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(totals, "layout", layout);
+        ReflectionTestUtils.setField(totals, "bucketCount", 16384);
+        ReflectionTestUtils.setField(totals, "migrateLegacy", true);
+        return totals;
+    }
+
+    private static PointsChangedEvent change(String userId, long total, long version) {
+        return new PointsChangedEvent(userId, null, 0L, null, total, version);
+    }
+}
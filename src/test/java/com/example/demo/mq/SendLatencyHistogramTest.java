@@ -0,0 +1,57 @@
+package com.example.demo.mq;
+
+import com.example.demo.controller.dto.SendLatencyResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendLatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        SendLatencyResponse snapshot = new SendLatencyHistogram().snapshot();
+
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getP50Ms()).isZero();
+        assertThat(snapshot.getP99Ms()).isZero();
+        assertThat(snapshot.getMaxMs()).isZero();
+    }
+
+    @Test
+    void percentilesReportTheUpperBoundOfTheirBucket() {
+        SendLatencyHistogram histogram = new SendLatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(40);
+        }
+        histogram.record(700);
+
+        SendLatencyResponse snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getP50Ms()).isEqualTo(5);
+        assertThat(snapshot.getP95Ms()).isEqualTo(50);
+        assertThat(snapshot.getP99Ms()).isEqualTo(50);
+        assertThat(snapshot.getMaxMs()).isEqualTo(700);
+    }
+
+    @Test
+    void percentileNeverExceedsTheMax() {
+        SendLatencyHistogram histogram = new SendLatencyHistogram();
+        histogram.record(120);
+
+        assertThat(histogram.snapshot().getP50Ms()).isEqualTo(120);
+    }
+
+    @Test
+    void valuesAboveTheLastBoundReportTheMax() {
+        SendLatencyHistogram histogram = new SendLatencyHistogram();
+        histogram.record(0);
+        histogram.record(9000);
+
+        SendLatencyResponse snapshot = histogram.snapshot();
+        assertThat(snapshot.getP50Ms()).isEqualTo(1);
+        assertThat(snapshot.getP99Ms()).isEqualTo(9000);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.repository;
+
+import com.example.demo.repository.PointsJdbcRepository.UserDelta;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PointsJdbcRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PointsJdbcRepository repository = new PointsJdbcRepository(jdbcTemplate);
+
+    @Test
+    void upsertWritesUsersInIdOrderWhateverTheMapOrder() {
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            userIds.add("user-" + i);
+        }
+        Collections.shuffle(userIds, new Random(42));
+        Map<String, UserDelta> deltas = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            deltas.put(userId, new UserDelta(userId.length(), 1));
+        }
+
+        repository.upsertAddPoints(deltas);
+
+        // 1000 rows per statement
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(3)).update(anyString(), args.capture());
+        List<String> written = new ArrayList<>();
+        for (Object[] statement : args.getAllValues()) {
+            for (int i = 0; i < statement.length; i += 3) {
+                String userId = (String) statement[i];
+                written.add(userId);
+                assertThat(statement[i + 1]).isEqualTo((long) userId.length());
+                assertThat(statement[i + 2]).isEqualTo(1L);
+            }
+        }
+        assertThat(written).hasSize(userIds.size()).isSorted();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.demo.service;
+
+import com.example.demo.controller.dto.AddPointsRequest;
+import com.example.demo.controller.dto.PointResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PointsGroupCommitterTest {
+
+    private final PointsService pointsService = mock(PointsService.class);
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+    private PointsGroupCommitter committer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        if (committer != null) {
+            committer.shutdown();
+        }
+    }
+
+    @Test
+    void failedBatchIsRetriedOneByOne() throws Exception {
+        CountDownLatch batchWritten = new CountDownLatch(1);
+        when(pointsService.addPointsGroup(anyList())).thenAnswer(invocation -> {
+            List<AddPointsRequest> requests = invocation.getArgument(0);
+            if (requests.size() > 1) {
+                batchWritten.countDown();
+            }
+            for (AddPointsRequest request : requests) {
+                if (request.getUserId().startsWith("bad")) {
+                    throw new DataIntegrityViolationException("Data too long for column 'user_id'");
+                }
+            }
+            return responses(requests);
+        });
+        // one batch of three: it fills up long before the linger runs out
+        committer = start(3, 10_000, 5_000);
+
+        Future<PointResponse> first = callers.submit(() -> committer.addPoints(request("u1")));
+        Future<PointResponse> bad = callers.submit(() -> committer.addPoints(request("bad")));
+        Future<PointResponse> second = callers.submit(() -> committer.addPoints(request("u2")));
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getUserId()).isEqualTo("u1");
+        assertThat(second.get(5, TimeUnit.SECONDS).getUserId()).isEqualTo("u2");
+        assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR));
+        assertThat(batchWritten.getCount()).isZero();
+        // the batch, then each of its three requests
+        verify(pointsService, atLeast(4)).addPointsGroup(anyList());
+    }
+
+    @Test
+    void statusFromTheServiceReachesTheCaller() {
+        when(pointsService.addPointsGroup(anyList()))
+                .thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "conflict"));
+        committer = start(1, 0, 5_000);
+
+        assertThatThrownBy(() -> committer.addPoints(request("u1")))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+    }
+
+    @Test
+    void callerGivesUpWith503WhenTheWriterIsStuck() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(pointsService.addPointsGroup(anyList())).thenAnswer(invocation -> {
+            release.await();
+            return responses(invocation.getArgument(0));
+        });
+        committer = start(1, 0, 100);
+
+        try {
+            long started = System.nanoTime();
+            assertThatThrownBy(() -> committer.addPoints(request("u1")))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(5_000);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void writerStoppedByAnErrorFailsWaitingAndNewCallers() throws Exception {
+        when(pointsService.addPointsGroup(anyList())).thenThrow(new OutOfMemoryError("simulated"));
+        committer = start(1, 0, 5_000);
+
+        assertThatThrownBy(() -> committer.addPoints(request("u1")))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThatThrownBy(() -> committer.addPoints(request("u2")))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private PointsGroupCommitter start(int batchSize, long maxLingerMs, long waitTimeoutMs) {
+        PointsGroupCommitter started = new PointsGroupCommitter(pointsService);
+        ReflectionTestUtils.setField(started, "enabled", true);
+        ReflectionTestUtils.setField(started, "batchSize", batchSize);
+        ReflectionTestUtils.setField(started, "maxLingerMs", maxLingerMs);
+        ReflectionTestUtils.setField(started, "queueCapacity", 100);
+        ReflectionTestUtils.setField(started, "waitTimeoutMs", waitTimeoutMs);
+        started.start();
+        return started;
+    }
+
+    private static AddPointsRequest request(String userId) {
+        AddPointsRequest request = new AddPointsRequest();
+        request.setUserId(userId);
+        request.setAmount(10L);
+        request.setReason("test");
+        return request;
+    }
+
+    private static List<PointResponse> responses(List<AddPointsRequest> requests) {
+        List<PointResponse> responses = new ArrayList<>(requests.size());
+        for (AddPointsRequest request : requests) {
+            PointResponse response = new PointResponse();
+            response.setUserId(request.getUserId());
+            response.setAmount(request.getAmount());
+            responses.add(response);
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long T = SnowflakeIdGenerator.EPOCH_MS + 1_000_000L;
+
+    @Test
+    void idsAreStrictlyIncreasingAndCarryTimeAndNode() {
+        AtomicLong clock = new AtomicLong(T);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, clock::get);
+
+        long previous = -1;
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 100 == 0) {
+                clock.incrementAndGet();
+            }
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(clock.get());
+            assertThat(nodeOf(id)).isEqualTo(7);
+            previous = id;
+        }
+    }
+
+    @Test
+    void exhaustedSequenceMovesToTheNextMillisecond() {
+        int perMs = 1 << SnowflakeIdGenerator.SEQUENCE_BITS;
+        AtomicLong calls = new AtomicLong();
+        // T for the first perMs + 1 reads, then T + 1
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(
+                1, () -> calls.incrementAndGet() > perMs + 1 ? T + 1 : T);
+
+        long previous = -1;
+        for (int i = 0; i < perMs; i++) {
+            long id = generator.nextId();
+            assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(T);
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        long next = generator.nextId();
+
+        assertThat(next).isGreaterThan(previous);
+        assertThat(SnowflakeIdGenerator.timestampOf(next)).isEqualTo(T + 1);
+        assertThat(next & ((1L << SnowflakeIdGenerator.SEQUENCE_BITS) - 1)).isZero();
+    }
+
+    @Test
+    void smallStepBackReusesTheLastMillisecond() {
+        AtomicLong clock = new AtomicLong(T);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+        long first = generator.nextId();
+
+        clock.set(T - 5);
+        long second = generator.nextId();
+
+        assertThat(second).isGreaterThan(first);
+        assertThat(SnowflakeIdGenerator.timestampOf(second)).isEqualTo(T);
+    }
+
+    @Test
+    void largeStepBackFails() {
+        AtomicLong clock = new AtomicLong(T);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+        generator.nextId();
+
+        clock.set(T - 6);
+
+        assertThatThrownBy(generator::nextId)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("backwards by 6 ms");
+    }
+
+    @Test
+    void concurrentCallersNeverGetTheSameId() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        int threads = 8;
+        int perThread = 20_000;
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> seen = new HashSet<>();
+            for (Future<long[]> result : results) {
+                long[] ids = result.get(30, TimeUnit.SECONDS);
+                for (int i = 0; i < ids.length; i++) {
+                    // each caller sees its own ids increase
+                    assertThat(i == 0 || ids[i] > ids[i - 1]).isTrue();
+                    assertThat(seen.add(ids[i])).isTrue();
+                }
+            }
+            assertThat(seen).hasSize(threads * perThread);
+        }
+    }
+
+    @Test
+    void rejectsNodeIdsOutOfRange() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODES))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long nodeOf(long id) {
+        return (id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & (SnowflakeIdGenerator.MAX_NODES - 1);
+    }
+}